@@ -0,0 +1,283 @@
+/* Copyright (C) 2015 Zach Ohara
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.zachohara.pictographer.benchmark;
+
+import io.github.zachohara.pictographer.core.FunctionParser;
+import io.github.zachohara.pictographer.core.Polynomial;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how quickly a {@code Polynomial} is evaluated, for several degrees and for
+ * each way that a polynomial can be stored: densely, sparsely, or with fractional
+ * exponents. Every operation is one evaluation at one x-coordinate.
+ * <p>
+ * The polynomial is evaluated between zero and one, where its terms are all positive
+ * and do not cancel. A second polynomial with the same exponents is evaluated far from
+ * the origin, where its terms are of similar size but alternate in sign, so that they
+ * cancel; this is where compensated arithmetic is needed.
+ * 
+ * @author Zach Ohara
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class EvaluateBenchmark {
+
+	/**
+	 * The degree of the polynomial. Every degree but the lowest is above
+	 * {@link Polynomial#MIN_SPARSE_DEGREE}, so that a {@code sparse} polynomial of that
+	 * degree is really stored sparsely.
+	 */
+	@Param({"4", "64", "256", "4096"})
+	public int degree;
+
+	/**
+	 * The kind of exponents: {@code dense} has every exponent up to the degree,
+	 * {@code sparse} has only a few of them, and {@code fractional} has exponents that
+	 * are not integers. A {@code sparse} polynomial of degree 4 has every exponent, and
+	 * is stored densely like any polynomial of degree up to
+	 * {@link Polynomial#MIN_SPARSE_DEGREE}, so it measures the same thing as
+	 * {@code dense}.
+	 */
+	@Param({"dense", "sparse", "fractional"})
+	public String kind;
+
+	/**
+	 * The polynomial to evaluate.
+	 */
+	private Polynomial function;
+
+	/**
+	 * The polynomial whose terms cancel far from the origin.
+	 */
+	private Polynomial farFunction;
+
+	/**
+	 * The generated operator for the polynomial.
+	 */
+	private DoubleUnaryOperator operator;
+
+	/**
+	 * The first derivative of the polynomial.
+	 */
+	private Polynomial slope;
+
+	/**
+	 * The second derivative of the polynomial.
+	 */
+	private Polynomial curvature;
+
+	/**
+	 * The array that holds the y-value, slope and second derivative at one x-coordinate.
+	 */
+	private double[] values;
+
+	/**
+	 * The x-coordinates to evaluate the polynomial at.
+	 */
+	private double[] xValues;
+
+	/**
+	 * The x-coordinates far from the origin to evaluate the second polynomial at.
+	 */
+	private double[] farXValues;
+
+	/**
+	 * The number of x-coordinates that are evaluated in each invocation.
+	 */
+	public static final int POINTS = 1024;
+
+	/**
+	 * The number of terms in a sparse polynomial.
+	 */
+	public static final int SPARSE_TERMS = 4;
+
+	/**
+	 * The farthest from the origin that the second polynomial is evaluated.
+	 */
+	public static final double MAX_FAR_X = 1000;
+
+	/**
+	 * The base-2 logarithm of the largest power of x that may be reached far from the
+	 * origin. High-degree polynomials are evaluated closer to the origin, so that no
+	 * power of x overflows and no coefficient underflows.
+	 */
+	public static final double MAX_FAR_POWER_EXPONENT = 512;
+
+	/**
+	 * Builds the polynomials, and the x-coordinates to evaluate them at. The first
+	 * polynomial is evaluated between zero and one, so that every kind of polynomial is
+	 * defined and finite. The second is evaluated between half of a far x-coordinate and
+	 * that x-coordinate, at which its terms have the same sizes as those of the first
+	 * polynomial at one, but alternate in sign.
+	 */
+	@Setup
+	public void setUp() {
+		double highest = "fractional".equals(this.kind) ? this.degree + 0.5 : this.degree;
+		double farthest = Math.min(MAX_FAR_X, Math.pow(2, MAX_FAR_POWER_EXPONENT / highest));
+		StringBuilder builder = new StringBuilder();
+		this.farFunction = new Polynomial();
+		int terms = 0;
+		for (int i = 0; i <= this.degree; i++) {
+			if ("sparse".equals(this.kind) && i % Math.max(1, this.degree / SPARSE_TERMS) != 0)
+				continue;
+			double exponent = "fractional".equals(this.kind) ? i + 0.5 : i;
+			double coefficient = (i % 7 + 1) / 8.0;
+			if (builder.length() > 0)
+				builder.append(" + ");
+			builder.append(coefficient).append("x^").append(exponent);
+			double sign = (terms % 2 == 0) ? 1 : -1;
+			this.farFunction.addTerm(sign * coefficient / Math.pow(farthest, exponent),
+					exponent);
+			terms++;
+		}
+		this.function = FunctionParser.parsePolynomialFunction(builder.toString());
+		this.farFunction.compile();
+		this.operator = this.function.toOperator();
+		this.slope = this.function.derivative();
+		this.curvature = this.slope.derivative();
+		this.values = new double[3];
+		this.xValues = new double[POINTS];
+		this.farXValues = new double[POINTS];
+		for (int i = 0; i < POINTS; i++) {
+			this.xValues[i] = (i + 0.5) / POINTS;
+			this.farXValues[i] = farthest * (1 + (i + 0.5) / POINTS) / 2;
+		}
+	}
+
+	/**
+	 * Evaluates the polynomial with {@link Polynomial#valueAt(double)}.
+	 * 
+	 * @param blackhole consumes the y-values.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public void valueAt(Blackhole blackhole) {
+		for (double x : this.xValues) {
+			blackhole.consume(this.function.valueAt(x));
+		}
+	}
+
+	/**
+	 * Evaluates the polynomial with its generated operator.
+	 * 
+	 * @param blackhole consumes the y-values.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public void operator(Blackhole blackhole) {
+		for (double x : this.xValues) {
+			blackhole.consume(this.operator.applyAsDouble(x));
+		}
+	}
+
+	/**
+	 * Evaluates the polynomial with compensated arithmetic, with
+	 * {@link Polynomial#compensatedValueAt(double)}, for comparison with
+	 * {@link #valueAt(Blackhole)}.
+	 * 
+	 * @param blackhole consumes the y-values.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public void compensated(Blackhole blackhole) {
+		for (double x : this.xValues) {
+			blackhole.consume(this.function.compensatedValueAt(x));
+		}
+	}
+
+	/**
+	 * Evaluates the second polynomial far from the origin, where its terms cancel, with
+	 * {@link Polynomial#valueAt(double)}.
+	 * 
+	 * @param blackhole consumes the y-values.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public void valueAtFar(Blackhole blackhole) {
+		for (double x : this.farXValues) {
+			blackhole.consume(this.farFunction.valueAt(x));
+		}
+	}
+
+	/**
+	 * Evaluates the second polynomial far from the origin, where its terms cancel, with
+	 * compensated arithmetic, for comparison with {@link #valueAtFar(Blackhole)}.
+	 * 
+	 * @param blackhole consumes the y-values.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public void compensatedFar(Blackhole blackhole) {
+		for (double x : this.farXValues) {
+			blackhole.consume(this.farFunction.compensatedValueAt(x));
+		}
+	}
+
+	/**
+	 * Evaluates the polynomial and its first two derivatives together, with
+	 * {@link Polynomial#valueAndDerivativesAt(double, double[])}.
+	 * 
+	 * @param blackhole consumes the y-values, slopes and second derivatives.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public void valueAndDerivatives(Blackhole blackhole) {
+		for (double x : this.xValues) {
+			this.function.valueAndDerivativesAt(x, this.values);
+			blackhole.consume(this.values[0]);
+			blackhole.consume(this.values[1]);
+			blackhole.consume(this.values[2]);
+		}
+	}
+
+	/**
+	 * Evaluates the polynomial and its first two derivatives one after another, for
+	 * comparison with {@link #valueAndDerivatives(Blackhole)}.
+	 * 
+	 * @param blackhole consumes the y-values, slopes and second derivatives.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public void derivativeChain(Blackhole blackhole) {
+		for (double x : this.xValues) {
+			blackhole.consume(this.function.valueAt(x));
+			blackhole.consume(this.slope.valueAt(x));
+			blackhole.consume(this.curvature.valueAt(x));
+		}
+	}
+
+}
@@ -0,0 +1,143 @@
+/* Copyright (C) 2015 Zach Ohara
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.zachohara.pictographer.benchmark;
+
+import io.github.zachohara.pictographer.core.FunctionParser;
+import io.github.zachohara.pictographer.core.GraphPlotter;
+import io.github.zachohara.pictographer.gui.Graph;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how quickly a {@code Graph} paints itself into an offscreen image, both when
+ * its cached overlay can be reused and when the points have just changed.
+ * 
+ * @author Zach Ohara
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+
+	/**
+	 * The width of the graph, in pixels. The height is in a 16:9 ratio to it.
+	 */
+	@Param({"640", "1920", "3840"})
+	public int width;
+
+	/**
+	 * The graph that is painted.
+	 */
+	private Graph graph;
+
+	/**
+	 * The plotter that holds the points of the graph.
+	 */
+	private GraphPlotter plotter;
+
+	/**
+	 * The offscreen image that the graph is painted into.
+	 */
+	private BufferedImage image;
+
+	/**
+	 * The graphics context of the offscreen image.
+	 */
+	private Graphics2D graphics;
+
+	/**
+	 * The function that is painted.
+	 */
+	public static final String FUNCTION = "0.01x^3 - 0.5x^2 + 2x - 4";
+
+	/**
+	 * Plots the function, and gives its points to a graph of the right size.
+	 */
+	@Setup
+	public void setUp() {
+		int height = this.width * 9 / 16;
+		this.plotter = new GraphPlotter();
+		this.plotter.plot(FunctionParser.parsePolynomialFunction(FUNCTION),
+				new double[] {-20, 20}, new double[] {-100, 100}, this.width, height);
+		this.graph = new Graph();
+		this.graph.setSize(this.width, height);
+		this.updatePoints();
+		this.image = new BufferedImage(this.width, height, BufferedImage.TYPE_INT_RGB);
+		this.graphics = this.image.createGraphics();
+	}
+
+	/**
+	 * Releases the graphics context of the offscreen image.
+	 */
+	@TearDown
+	public void tearDown() {
+		this.graphics.dispose();
+	}
+
+	/**
+	 * Paints the graph without changing its points, so that only the cached overlay is
+	 * copied.
+	 * 
+	 * @return the offscreen image.
+	 */
+	@Benchmark
+	public BufferedImage paintCached() {
+		this.graph.paintComponent(this.graphics);
+		return this.image;
+	}
+
+	/**
+	 * Gives the graph its points again and then paints it, so that the overlay is drawn
+	 * from scratch.
+	 * 
+	 * @return the offscreen image.
+	 */
+	@Benchmark
+	public BufferedImage paintUpdated() {
+		this.updatePoints();
+		this.graph.paintComponent(this.graphics);
+		return this.image;
+	}
+
+	/**
+	 * Copies the points from the plotter to the graph.
+	 */
+	private void updatePoints() {
+		this.graph.setPolylines(this.plotter.getXPixels(), this.plotter.getYPixels(),
+				this.plotter.getPointCount(), this.plotter.getPolylineStarts(),
+				this.plotter.getPolylineCount());
+	}
+
+}
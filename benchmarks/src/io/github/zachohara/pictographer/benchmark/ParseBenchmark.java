@@ -0,0 +1,99 @@
+/* Copyright (C) 2015 Zach Ohara
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.zachohara.pictographer.benchmark;
+
+import io.github.zachohara.pictographer.core.FunctionParser;
+import io.github.zachohara.pictographer.core.Polynomial;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how quickly {@code FunctionParser} turns a {@code String} into a
+ * {@code Polynomial}, for a short function and for a function with ten thousand terms.
+ * 
+ * @author Zach Ohara
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ParseBenchmark {
+
+	/**
+	 * The function that is parsed: either {@code short} or {@code long}.
+	 */
+	@Param({"short", "long"})
+	public String input;
+
+	/**
+	 * The {@code String} of the function to parse.
+	 */
+	private String function;
+
+	/**
+	 * The function that is parsed when the input is {@code short}.
+	 */
+	public static final String SHORT_FUNCTION = "3x^2 - 2x + 1";
+
+	/**
+	 * The number of terms in the function that is parsed when the input is {@code long}.
+	 */
+	public static final int LONG_TERMS = 10000;
+
+	/**
+	 * Builds the function to parse.
+	 */
+	@Setup
+	public void setUp() {
+		if ("short".equals(this.input)) {
+			this.function = SHORT_FUNCTION;
+		} else {
+			StringBuilder builder = new StringBuilder();
+			for (int i = 0; i < LONG_TERMS; i++) {
+				if (i > 0)
+					builder.append((i % 3 == 0) ? " - " : " + ");
+				builder.append((i % 97 + 1) / 8.0).append("x^").append(i % 1000);
+			}
+			this.function = builder.toString();
+		}
+	}
+
+	/**
+	 * Parses the function.
+	 * 
+	 * @return the parsed polynomial.
+	 */
+	@Benchmark
+	public Polynomial parse() {
+		return FunctionParser.parsePolynomialFunction(this.function);
+	}
+
+}
@@ -0,0 +1,148 @@
+/* Copyright (C) 2015 Zach Ohara
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.zachohara.pictographer.benchmark;
+
+import io.github.zachohara.pictographer.core.FunctionParser;
+import io.github.zachohara.pictographer.core.GraphPlotter;
+import io.github.zachohara.pictographer.core.Polynomial;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how quickly {@code GraphPlotter} turns a polynomial into pixel polylines at
+ * several image widths, both from scratch and after panning the graph, when most of the
+ * cached samples can be reused. This is the work that {@code GraphWindow} does every
+ * time the graph is redrawn.
+ * 
+ * @author Zach Ohara
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PlotBenchmark {
+
+	/**
+	 * The width of the image, in pixels. The height is in a 16:9 ratio to it.
+	 */
+	@Param({"640", "1920", "7680"})
+	public int width;
+
+	/**
+	 * The function that is plotted.
+	 */
+	@Param({"0.01x^3 - 0.5x^2 + 2x - 4", "x^30 - 1", "x^0.5 - 3"})
+	public String function;
+
+	/**
+	 * The parsed function.
+	 */
+	private Polynomial polynomial;
+
+	/**
+	 * The plotter that is reused by every invocation.
+	 */
+	private GraphPlotter plotter;
+
+	/**
+	 * The number of times the graph has been panned.
+	 */
+	private int pans;
+
+	/**
+	 * The x-boundaries of the graph.
+	 */
+	public static final double[] X_RANGE = {-20, 20};
+
+	/**
+	 * The y-boundaries of the graph.
+	 */
+	public static final double[] Y_RANGE = {-100, 100};
+
+	/**
+	 * The number of pixels that the graph is panned by each time.
+	 */
+	public static final int PAN_PIXELS = 8;
+
+	/**
+	 * Parses the function, and creates the plotter.
+	 */
+	@Setup
+	public void setUp() {
+		this.polynomial = FunctionParser.parsePolynomialFunction(this.function);
+		this.plotter = new GraphPlotter();
+	}
+
+	/**
+	 * Plots the function from scratch, without any cached samples.
+	 * 
+	 * @return the number of points that were plotted.
+	 */
+	@Benchmark
+	public int plot() {
+		this.plotter.clearCache();
+		this.plotter.plot(this.polynomial, X_RANGE, Y_RANGE, this.width,
+				this.width * 9 / 16);
+		return this.plotter.getPointCount();
+	}
+
+	/**
+	 * Plots the function after panning the previous graph a few pixels to the right,
+	 * so that only the newly exposed columns need to be sampled.
+	 * 
+	 * @return the number of points that were plotted.
+	 */
+	@Benchmark
+	public int panX() {
+		double offset = (++this.pans % 1024) * PAN_PIXELS * (X_RANGE[1] - X_RANGE[0])
+				/ this.width;
+		this.plotter.plot(this.polynomial,
+				new double[] {X_RANGE[0] + offset, X_RANGE[1] + offset}, Y_RANGE,
+				this.width, this.width * 9 / 16);
+		return this.plotter.getPointCount();
+	}
+
+	/**
+	 * Plots the function after moving the y-boundaries of the previous graph, so that
+	 * no samples need to be calculated.
+	 * 
+	 * @return the number of points that were plotted.
+	 */
+	@Benchmark
+	public int panY() {
+		double offset = (++this.pans % 2) * (Y_RANGE[1] - Y_RANGE[0]) / 4;
+		this.plotter.plot(this.polynomial, X_RANGE,
+				new double[] {Y_RANGE[0] + offset, Y_RANGE[1] + offset}, this.width,
+				this.width * 9 / 16);
+		return this.plotter.getPointCount();
+	}
+
+}
@@ -0,0 +1,126 @@
+/* Copyright (C) 2015 Zach Ohara
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.github.zachohara.pictographer.benchmark;
+
+import io.github.zachohara.pictographer.core.Polynomial;
+import io.github.zachohara.pictographer.core.RootFinder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how quickly {@code RootFinder} finds the roots and the extrema of a
+ * polynomial with random coefficients, within a range that contains all of its real
+ * roots. Every operation searches one freshly built polynomial, so that no derivatives
+ * are reused from an earlier operation.
+ * 
+ * @author Zach Ohara
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RootBenchmark {
+
+	/**
+	 * The degree of the polynomial.
+	 */
+	@Param({"8", "50"})
+	public int degree;
+
+	/**
+	 * The coefficients of the polynomial, indexed by exponent.
+	 */
+	private double[] coefficients;
+
+	/**
+	 * The lower end of the range to search.
+	 */
+	public static final double X_MIN = -3;
+
+	/**
+	 * The upper end of the range to search.
+	 */
+	public static final double X_MAX = 3;
+
+	/**
+	 * The seed for the random coefficients, so that every run searches the same
+	 * polynomial.
+	 */
+	public static final long SEED = 50;
+
+	/**
+	 * Chooses the coefficients of the polynomial.
+	 */
+	@Setup
+	public void setUp() {
+		Random random = new Random(SEED);
+		this.coefficients = new double[this.degree + 1];
+		for (int i = 0; i <= this.degree; i++) {
+			this.coefficients[i] = random.nextGaussian();
+		}
+	}
+
+	/**
+	 * Builds a new polynomial from the coefficients.
+	 * 
+	 * @return the new polynomial.
+	 */
+	private Polynomial buildPolynomial() {
+		Polynomial function = new Polynomial();
+		for (int i = 0; i <= this.degree; i++) {
+			function.addTerm(this.coefficients[i], i);
+		}
+		return function;
+	}
+
+	/**
+	 * Finds the roots of the polynomial.
+	 * 
+	 * @return the roots.
+	 */
+	@Benchmark
+	public double[] findRoots() {
+		return RootFinder.findRoots(this.buildPolynomial(), X_MIN, X_MAX);
+	}
+
+	/**
+	 * Finds the extrema of the polynomial.
+	 * 
+	 * @return the x-coordinates of the extrema.
+	 */
+	@Benchmark
+	public double[] findExtrema() {
+		return RootFinder.findExtrema(this.buildPolynomial(), X_MIN, X_MAX);
+	}
+
+}
@@ -0,0 +1,258 @@
+/* Copyright (C) 2015 Zach Ohara
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.zachohara.pictographer;
+
+import io.github.zachohara.pictographer.core.FunctionParser;
+import io.github.zachohara.pictographer.core.GraphPlotter;
+import io.github.zachohara.pictographer.core.Polynomial;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A {@code BatchRenderer} draws graphs on to images without opening any windows. It
+ * reads a manifest of jobs, and writes one composited PNG image for each job.
+ * <p>
+ * Each non-empty line of a manifest that does not start with {@code #} is one job, with
+ * seven comma-separated fields:
+ * 
+ * <pre>
+ * image, output, xMin, xMax, yMin, yMax, function
+ * </pre>
+ * 
+ * The function is the last field, so it may contain any characters except a line break.
+ * Several functions may be drawn on the same image by separating them with {@code ;}.
+ * Relative paths are resolved against the folder that contains the manifest.
+ * <p>
+ * Jobs run concurrently on a fixed pool of worker threads. Each image is decoded, drawn
+ * on and written one horizontal band at a time by an {@link ImageExporter}, so a job
+ * never holds a whole full-resolution image in memory. Only a limited number of images
+ * may be rendered at once; a worker waits for another job to finish writing its image
+ * before it starts decoding a new one.
+ * 
+ * @author Zach Ohara
+ */
+public class BatchRenderer {
+
+	/**
+	 * The jobs to render.
+	 */
+	private final List<Job> jobs;
+
+	/**
+	 * The number of worker threads that render jobs.
+	 */
+	private final int workers;
+
+	/**
+	 * The permits for decoding an image. A permit is held from the moment a job starts
+	 * decoding its image until its output has been written.
+	 */
+	private final Semaphore imagePermits;
+
+
+	/**
+	 * The number of comma-separated fields on each line of a manifest.
+	 */
+	public static final int MANIFEST_FIELDS = 7;
+
+	/**
+	 * The format of the images that are written.
+	 */
+	public static final String OUTPUT_FORMAT = "png";
+
+	/**
+	 * Constructs a new {@code BatchRenderer} for the given jobs.
+	 * 
+	 * @param jobs the jobs to render.
+	 * @param workers the number of worker threads to render jobs with.
+	 * @param maxImages the largest number of images that may be held in memory at once.
+	 */
+	public BatchRenderer(List<Job> jobs, int workers, int maxImages) {
+		this.jobs = jobs;
+		this.workers = Math.max(1, workers);
+		this.imagePermits = new Semaphore(Math.max(1, maxImages));
+	}
+
+	/**
+	 * Renders every job, and waits for all of them to finish. A job that fails does not
+	 * stop the others; its error is printed instead.
+	 * 
+	 * @return the number of jobs that failed.
+	 * @throws InterruptedException if this thread is interrupted while waiting.
+	 */
+	public int renderAll() throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(this.workers);
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for (final Job job : this.jobs) {
+			results.add(pool.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException, InterruptedException {
+					BatchRenderer.this.render(job);
+					return null;
+				}
+			}));
+		}
+		pool.shutdown();
+		int failures = 0;
+		for (int i = 0; i < results.size(); i++) {
+			try {
+				results.get(i).get();
+			} catch (ExecutionException e) {
+				failures++;
+				Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+				System.err.println("Could not render " + this.jobs.get(i).image + ": "
+						+ cause);
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * Renders a single job: decodes its image, draws the graph over it, and writes the
+	 * result.
+	 * 
+	 * @param job the job to render.
+	 * @throws IOException if the image could not be read or written.
+	 * @throws InterruptedException if this thread is interrupted while waiting for a
+	 * permit to decode the image.
+	 */
+	private void render(Job job) throws IOException, InterruptedException {
+		this.imagePermits.acquire();
+		try {
+			List<Polynomial> functions = new ArrayList<Polynomial>();
+			for (String piece : FunctionParser.splitFunctions(job.function))
+				functions.add(FunctionParser.parsePolynomialFunction(piece));
+			ImageExporter.export(job.image, job.output, OUTPUT_FORMAT, functions, job.xRange,
+					job.yRange, Boolean.getBoolean(GraphPlotter.COMPENSATED_PROPERTY));
+		} finally {
+			this.imagePermits.release();
+		}
+	}
+
+	/**
+	 * Reads a manifest of jobs.
+	 * 
+	 * @param manifest the manifest file.
+	 * @return the list of jobs in the manifest.
+	 * @throws IOException if the manifest could not be read.
+	 * @throws IllegalArgumentException if a line of the manifest is not a valid job.
+	 */
+	public static List<Job> readManifest(File manifest) throws IOException {
+		File folder = manifest.getAbsoluteFile().getParentFile();
+		List<String> lines = Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8);
+		List<Job> jobs = new ArrayList<Job>();
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i).trim();
+			if (line.length() == 0 || line.startsWith("#"))
+				continue;
+			String[] fields = line.split(",", MANIFEST_FIELDS);
+			if (fields.length != MANIFEST_FIELDS) {
+				throw new IllegalArgumentException("line " + (i + 1) + " of the manifest has "
+						+ fields.length + " fields instead of " + MANIFEST_FIELDS);
+			}
+			try {
+				jobs.add(new Job(resolve(folder, fields[0].trim()),
+						resolve(folder, fields[1].trim()),
+						new double[] {Double.parseDouble(fields[2].trim()),
+								Double.parseDouble(fields[3].trim())},
+						new double[] {Double.parseDouble(fields[4].trim()),
+								Double.parseDouble(fields[5].trim())},
+						fields[6].trim()));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("line " + (i + 1)
+						+ " of the manifest has an invalid boundary", e);
+			}
+		}
+		return jobs;
+	}
+
+	/**
+	 * Resolves a path from a manifest against the folder that contains the manifest.
+	 * 
+	 * @param folder the folder that contains the manifest.
+	 * @param path the path from the manifest.
+	 * @return the resolved file.
+	 */
+	private static File resolve(File folder, String path) {
+		File file = new File(path);
+		if (file.isAbsolute())
+			return file;
+		return new File(folder, path);
+	}
+
+	/**
+	 * A {@code Job} describes a single image that should be rendered.
+	 */
+	public static class Job {
+
+		/**
+		 * The background image.
+		 */
+		private final File image;
+
+		/**
+		 * The file that the composited image is written to.
+		 */
+		private final File output;
+
+		/**
+		 * The x-boundaries of the graph.
+		 */
+		private final double[] xRange;
+
+		/**
+		 * The y-boundaries of the graph.
+		 */
+		private final double[] yRange;
+
+		/**
+		 * The {@code String} of the function to graph.
+		 */
+		private final String function;
+
+		/**
+		 * Constructs a new {@code Job}.
+		 * 
+		 * @param image the background image.
+		 * @param output the file to write the composited image to.
+		 * @param xRange the x-boundaries of the graph.
+		 * @param yRange the y-boundaries of the graph.
+		 * @param function the {@code String} of the function to graph.
+		 */
+		public Job(File image, File output, double[] xRange, double[] yRange,
+				String function) {
+			this.image = image;
+			this.output = output;
+			this.xRange = xRange;
+			this.yRange = yRange;
+			this.function = function;
+		}
+
+	}
+
+}
@@ -0,0 +1,509 @@
+/* Copyright (C) 2015 Zach Ohara
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.github.zachohara.pictographer;
+
+import io.github.zachohara.pictographer.core.GraphPlotter;
+import io.github.zachohara.pictographer.core.Polynomial;
+
+import java.awt.AlphaComposite;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * The {@code ImageExporter} class contains static methods for saving a graph drawn over
+ * its background image, at the full resolution of the image.
+ * <p>
+ * The composited image is never held in memory all at once. The graph is plotted once
+ * for the whole image, and then the image is handed to an {@code ImageWriter} one
+ * horizontal band at a time: each band of the background is decoded, the part of the
+ * graph that crosses it is drawn over it, and its rows are written before the next band
+ * is decoded. The PNG writer reads an image one row at a time, so exporting to PNG only
+ * ever needs one band in memory. The JPEG writer that comes with Java reads the whole
+ * image before encoding it, so exporting to JPEG still needs memory for every pixel.
+ * 
+ * @author Zach Ohara
+ */
+public final class ImageExporter {
+
+	/**
+	 * The format that images are written in when the name of the output file does not
+	 * name another format.
+	 */
+	public static final String DEFAULT_FORMAT = "png";
+
+	/**
+	 * The largest number of pixels in one band of an exported image.
+	 */
+	private static final int BAND_PIXELS = 1 << 24;
+
+	/**
+	 * The {@code ImageExporter} class should not be instantiable.
+	 */
+	private ImageExporter() {
+
+	}
+
+	/**
+	 * Draws a graph over an image at the full resolution of the image, and writes the
+	 * result to a file. The format is chosen from the extension of the output file.
+	 * 
+	 * @param source the background image file.
+	 * @param output the file to write.
+	 * @param functions the polynomial functions to graph.
+	 * @param xRange the x-boundaries of the graph.
+	 * @param yRange the y-boundaries of the graph.
+	 * @param compensated whether the functions should be evaluated with compensated
+	 * arithmetic.
+	 * @throws IOException if the image could not be read or written.
+	 * @see #getFormat(File)
+	 */
+	public static void export(File source, File output, List<Polynomial> functions,
+			double[] xRange, double[] yRange, boolean compensated) throws IOException {
+		export(source, output, getFormat(output), functions, xRange, yRange, compensated);
+	}
+
+	/**
+	 * Draws a graph over an image at the full resolution of the image, and writes the
+	 * result to a file in the given format.
+	 * 
+	 * @param source the background image file.
+	 * @param output the file to write.
+	 * @param format the informal name of the format to write, such as {@code "png"}.
+	 * @param functions the polynomial functions to graph.
+	 * @param xRange the x-boundaries of the graph.
+	 * @param yRange the y-boundaries of the graph.
+	 * @param compensated whether the functions should be evaluated with compensated
+	 * arithmetic.
+	 * @throws IOException if the image could not be read or written.
+	 */
+	public static void export(File source, File output, String format,
+			List<Polynomial> functions, double[] xRange, double[] yRange,
+			boolean compensated) throws IOException {
+		Dimension size = ImageLoader.readSize(source);
+		if (size == null)
+			throw new IOException(source.getName() + " is not an image");
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+		if (!writers.hasNext())
+			throw new IOException("no writer for " + format + " images");
+		ImageWriter writer = writers.next();
+		GraphPlotter plotter = new GraphPlotter();
+		plotter.setCompensated(compensated);
+		plotter.plot(functions, xRange, yRange, size.width, size.height, null);
+		BandedImage image = new BandedImage(source, plotter, size.width, size.height,
+				!isOpaqueFormat(format));
+		output.delete();
+		ImageOutputStream stream = ImageIO.createImageOutputStream(output);
+		if (stream == null)
+			throw new IOException("Can't create output file!");
+		boolean written = false;
+		try {
+			writer.setOutput(stream);
+			writer.write(image);
+			written = true;
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			writer.dispose();
+			stream.close();
+			if (!written)
+				output.delete();
+		}
+	}
+
+	/**
+	 * Gets the format that an image should be written in, from the extension of the name
+	 * of its file.
+	 * 
+	 * @param output the file to write.
+	 * @return {@code "jpeg"} if the file name ends in {@code .jpg} or {@code .jpeg};
+	 * {@value #DEFAULT_FORMAT} otherwise.
+	 */
+	public static String getFormat(File output) {
+		String name = output.getName().toLowerCase();
+		if (name.endsWith(".jpg") || name.endsWith(".jpeg"))
+			return "jpeg";
+		return DEFAULT_FORMAT;
+	}
+
+	/**
+	 * Determines if a format cannot store transparency.
+	 * 
+	 * @param format the informal name of the format.
+	 * @return {@code true} if the format has no alpha channel; {@code false} otherwise.
+	 */
+	private static boolean isOpaqueFormat(String format) {
+		return format.equalsIgnoreCase("jpeg") || format.equalsIgnoreCase("jpg")
+				|| format.equalsIgnoreCase("bmp");
+	}
+
+	/**
+	 * A {@code BandedImage} is a composited image that is only rendered one horizontal
+	 * band at a time, as its pixels are asked for. Rows that lie within one band are
+	 * served straight from that band; larger requests are copied together from every
+	 * band they cross.
+	 * <p>
+	 * Errors while decoding the background are thrown as {@code UncheckedIOException},
+	 * because the methods of {@code RenderedImage} cannot throw checked exceptions.
+	 */
+	private static class BandedImage implements RenderedImage {
+
+		/**
+		 * The background image file.
+		 */
+		private final File source;
+
+		/**
+		 * The plotter that holds the graph, plotted for the whole image.
+		 */
+		private final GraphPlotter plotter;
+
+		/**
+		 * The width of the image, in pixels.
+		 */
+		private final int width;
+
+		/**
+		 * The height of the image, in pixels.
+		 */
+		private final int height;
+
+		/**
+		 * The height of every band but the last, in pixels.
+		 */
+		private final int bandHeight;
+
+		/**
+		 * The current band. The last band of the image uses only its top rows.
+		 */
+		private final BufferedImage band;
+
+		/**
+		 * The index of the current band, or {@code -1} if no band has been rendered.
+		 */
+		private int bandIndex;
+
+		/**
+		 * Constructs a new {@code BandedImage}. The first band is rendered right away,
+		 * so that the background can be checked before anything is written.
+		 * 
+		 * @param source the background image file.
+		 * @param plotter the plotter that holds the graph.
+		 * @param width the width of the image, in pixels.
+		 * @param height the height of the image, in pixels.
+		 * @param allowAlpha whether the image may keep the transparency of the
+		 * background.
+		 * @throws IOException if the first band of the background could not be read.
+		 */
+		public BandedImage(File source, GraphPlotter plotter, int width, int height,
+				boolean allowAlpha) throws IOException {
+			this.source = source;
+			this.plotter = plotter;
+			this.width = width;
+			this.height = height;
+			this.bandHeight = Math.max(1, Math.min(height, BAND_PIXELS / Math.max(1, width)));
+			BufferedImage first = this.decodeBand(0);
+			int type = (allowAlpha && first.getColorModel().hasAlpha())
+					? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+			this.band = new BufferedImage(width, this.bandHeight, type);
+			this.drawBand(0, first);
+		}
+
+		/**
+		 * Makes the band with the given index the current band, rendering it if it is
+		 * not already.
+		 * 
+		 * @param index the index of the band.
+		 */
+		private void renderBand(int index) {
+			if (index == this.bandIndex)
+				return;
+			try {
+				this.drawBand(index, this.decodeBand(index));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/**
+		 * Decodes the part of the background that lies under a band.
+		 * 
+		 * @param index the index of the band.
+		 * @return the decoded part of the background.
+		 * @throws IOException if the background could not be read.
+		 */
+		private BufferedImage decodeBand(int index) throws IOException {
+			int top = index * this.bandHeight;
+			Rectangle region = new Rectangle(0, top, this.width,
+					Math.min(this.bandHeight, this.height - top));
+			BufferedImage decoded = ImageLoader.read(this.source, region, 1);
+			if (decoded == null)
+				throw new IOException(this.source.getName() + " is not an image");
+			return decoded;
+		}
+
+		/**
+		 * Draws a band: copies the background into it, and then draws the part of the
+		 * graph that crosses it.
+		 * 
+		 * @param index the index of the band.
+		 * @param background the decoded part of the background under the band.
+		 */
+		private void drawBand(int index, BufferedImage background) {
+			Graphics2D g = this.band.createGraphics();
+			g.setComposite(AlphaComposite.Src);
+			g.drawImage(background, 0, 0, null);
+			g.setComposite(AlphaComposite.SrcOver);
+			g.translate(0, -index * this.bandHeight);
+			GraphPlotter.drawCurves(g, this.plotter.getXPixels(), this.plotter.getYPixels(),
+					this.plotter.getPointCount(), this.plotter.getPolylineStarts(),
+					this.plotter.getPolylineCount(), this.plotter.getCurveStarts(),
+					this.plotter.getCurveCount());
+			g.dispose();
+			this.bandIndex = index;
+		}
+
+		/**
+		 * Gets the bounds of a band within the image.
+		 * 
+		 * @param index the index of the band.
+		 * @return the bounds of the band.
+		 */
+		private Rectangle getBandBounds(int index) {
+			int top = index * this.bandHeight;
+			return new Rectangle(0, top, this.width, Math.min(this.bandHeight,
+					this.height - top));
+		}
+
+		/**
+		 * Renders only the bands that the rectangle crosses. A rectangle within one band,
+		 * such as a single row, is copied straight from that band.
+		 */
+		@Override
+		public Raster getData(Rectangle rect) {
+			int first = rect.y / this.bandHeight;
+			int last = (rect.y + rect.height - 1) / this.bandHeight;
+			if (first == last) {
+				this.renderBand(first);
+				return this.band.getData(new Rectangle(rect.x, rect.y - first
+						* this.bandHeight, rect.width, rect.height))
+						.createTranslatedChild(rect.x, rect.y);
+			}
+			return this.copyData(this.band.getRaster().createCompatibleWritableRaster(
+					rect.x, rect.y, rect.width, rect.height));
+		}
+
+		/**
+		 * Renders every band that the raster crosses, one at a time, and copies each into
+		 * the raster.
+		 */
+		@Override
+		public WritableRaster copyData(WritableRaster raster) {
+			if (raster == null) {
+				raster = this.band.getRaster().createCompatibleWritableRaster(this.width,
+						this.height);
+			}
+			Rectangle bounds = raster.getBounds();
+			int first = Math.max(0, bounds.y / this.bandHeight);
+			int last = Math.min(this.getNumYTiles() - 1,
+					(bounds.y + bounds.height - 1) / this.bandHeight);
+			for (int index = first; index <= last; index++) {
+				Rectangle part = bounds.intersection(this.getBandBounds(index));
+				if (part.isEmpty())
+					continue;
+				this.renderBand(index);
+				raster.setRect(this.band.getRaster().createChild(part.x,
+						part.y - index * this.bandHeight, part.width, part.height, part.x,
+						part.y, null));
+			}
+			return raster;
+		}
+
+		/**
+		 * Renders every band of the image, and copies all of them into one raster. This
+		 * needs memory for every pixel of the image.
+		 */
+		@Override
+		public Raster getData() {
+			return this.copyData(null);
+		}
+
+		/**
+		 * Each tile is one band of the image, spanning its whole width.
+		 */
+		@Override
+		public Raster getTile(int tileX, int tileY) {
+			return this.getData(this.getBandBounds(tileY));
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public ColorModel getColorModel() {
+			return this.band.getColorModel();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public SampleModel getSampleModel() {
+			return this.band.getSampleModel();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int getWidth() {
+			return this.width;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int getHeight() {
+			return this.height;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int getMinX() {
+			return 0;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int getMinY() {
+			return 0;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int getNumXTiles() {
+			return 1;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int getNumYTiles() {
+			return (this.height + this.bandHeight - 1) / this.bandHeight;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int getMinTileX() {
+			return 0;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int getMinTileY() {
+			return 0;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int getTileWidth() {
+			return this.width;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int getTileHeight() {
+			return this.bandHeight;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int getTileGridXOffset() {
+			return 0;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int getTileGridYOffset() {
+			return 0;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Vector<RenderedImage> getSources() {
+			return null;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Object getProperty(String name) {
+			return Image.UndefinedProperty;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String[] getPropertyNames() {
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,177 @@
+/* Copyright (C) 2015 Zach Ohara
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.zachohara.pictographer;
+
+import io.github.zachohara.pictographer.core.RenderMetrics;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * The {@code ImageLoader} class contains static methods for decoding only as much of an
+ * image file as is needed. Images can be decoded at a lower resolution, so that a huge
+ * image can be shown on the screen without first decoding every pixel of it, or only a
+ * region of an image can be decoded.
+ * 
+ * @author Zach Ohara
+ */
+public final class ImageLoader {
+
+	/**
+	 * The {@code ImageLoader} class should not be instantiable.
+	 */
+	private ImageLoader() {
+
+	}
+
+	/**
+	 * Reads the size of an image, without decoding any of its pixels.
+	 * 
+	 * @param file the image file.
+	 * @return the size of the image, or {@code null} if the file is not an image.
+	 * @throws IOException if the file could not be read.
+	 */
+	public static Dimension readSize(File file) throws IOException {
+		ImageInputStream input = ImageIO.createImageInputStream(file);
+		if (input == null)
+			throw new IOException("Can't read input file!");
+		try {
+			ImageReader reader = getReader(input);
+			if (reader == null)
+				return null;
+			try {
+				return new Dimension(reader.getWidth(0), reader.getHeight(0));
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Reads an image at the highest resolution that fits within the given size. The
+	 * image is decoded by skipping rows and columns of the source, so an image that is
+	 * much larger than the given size never has all of its pixels in memory.
+	 * 
+	 * @param file the image file.
+	 * @param maxWidth the largest width of the returned image.
+	 * @param maxHeight the largest height of the returned image.
+	 * @return the decoded image, or {@code null} if the file is not an image.
+	 * @throws IOException if the file could not be read.
+	 */
+	public static BufferedImage readToFit(File file, int maxWidth, int maxHeight)
+			throws IOException {
+		Dimension size = readSize(file);
+		if (size == null)
+			return null;
+		int subsampling = getSubsampling(size.width, size.height, maxWidth, maxHeight);
+		return read(file, null, subsampling);
+	}
+
+	/**
+	 * Reads a region of an image, skipping rows and columns of the source according to
+	 * the given subsampling factor.
+	 * 
+	 * @param file the image file.
+	 * @param region the region of the source image to decode, in source pixels, or
+	 * {@code null} to decode the whole image.
+	 * @param subsampling the number of source pixels in each direction that become one
+	 * pixel of the returned image; {@code 1} decodes the region at full resolution.
+	 * @return the decoded image, or {@code null} if the file is not an image.
+	 * @throws IOException if the file could not be read.
+	 */
+	public static BufferedImage read(File file, Rectangle region, int subsampling)
+			throws IOException {
+		ImageInputStream input = ImageIO.createImageInputStream(file);
+		if (input == null)
+			throw new IOException("Can't read input file!");
+		try {
+			ImageReader reader = getReader(input);
+			if (reader == null)
+				return null;
+			RenderMetrics.StageEvent start = RenderMetrics.start();
+			try {
+				ImageReadParam param = reader.getDefaultReadParam();
+				if (region != null)
+					param.setSourceRegion(region);
+				if (subsampling > 1)
+					param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				BufferedImage image = reader.read(0, param);
+				RenderMetrics.end(RenderMetrics.Stage.DECODE, start,
+						(long)(image.getWidth()) * image.getHeight());
+				return image;
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Reads a whole image at full resolution.
+	 * 
+	 * @param file the image file.
+	 * @return the decoded image, or {@code null} if the file is not an image.
+	 * @throws IOException if the file could not be read.
+	 */
+	public static BufferedImage readFullResolution(File file) throws IOException {
+		return read(file, null, 1);
+	}
+
+	/**
+	 * Calculates the smallest subsampling factor that makes an image fit within the
+	 * given size.
+	 * 
+	 * @param width the width of the source image.
+	 * @param height the height of the source image.
+	 * @param maxWidth the largest width of the subsampled image.
+	 * @param maxHeight the largest height of the subsampled image.
+	 * @return the subsampling factor, which is at least {@code 1}.
+	 */
+	public static int getSubsampling(int width, int height, int maxWidth, int maxHeight) {
+		int xFactor = (width + Math.max(1, maxWidth) - 1) / Math.max(1, maxWidth);
+		int yFactor = (height + Math.max(1, maxHeight) - 1) / Math.max(1, maxHeight);
+		return Math.max(1, Math.max(xFactor, yFactor));
+	}
+
+	/**
+	 * Finds an {@code ImageReader} for the given stream, and attaches it to the stream.
+	 * 
+	 * @param input the stream to read from.
+	 * @return the reader, or {@code null} if there is no reader for the stream.
+	 */
+	private static ImageReader getReader(ImageInputStream input) {
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+		if (!readers.hasNext())
+			return null;
+		ImageReader reader = readers.next();
+		reader.setInput(input, true, true);
+		return reader;
+	}
+
+}
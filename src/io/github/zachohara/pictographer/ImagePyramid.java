@@ -0,0 +1,651 @@
+/* Copyright (C) 2015 Zach Ohara
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.github.zachohara.pictographer;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * An {@code ImagePyramid} holds an image at many levels of detail, split into square
+ * tiles, so that any part of a huge image can be shown at any zoom without decoding
+ * more than the tiles that are on the screen.
+ * <p>
+ * Level {@code 0} is the image at full resolution, and each level after it is half the
+ * width and height of the one before, down to a level that fits in a single tile. The
+ * pyramid is built by {@link #build()} in one pass over the image, one horizontal band
+ * at a time, and every tile is written to a temporary file as it is finished. Tiles can
+ * be read while the pyramid is still being built; a tile that has not been built yet is
+ * simply not available. Tiles that have been read are kept in memory, and the least
+ * recently used ones are dropped once they take up too many bytes.
+ * <p>
+ * Tiles can also be requested without waiting for them to be read, with
+ * {@link #requestTile(int, int, int)}, which is how they should be read from the event
+ * dispatch thread. The pyramid should be closed once it is no longer needed, which
+ * deletes the tile file.
+ * 
+ * @author Zach Ohara
+ */
+public class ImagePyramid {
+
+	/**
+	 * The background image file.
+	 */
+	private final File source;
+
+	/**
+	 * The width of each level, in pixels.
+	 */
+	private final int[] levelWidths;
+
+	/**
+	 * The height of each level, in pixels.
+	 */
+	private final int[] levelHeights;
+
+	/**
+	 * The index of the first tile of each level in the tile file.
+	 */
+	private final long[] levelOffsets;
+
+	/**
+	 * The number of rows of tiles of each level that have been written to the tile
+	 * file.
+	 */
+	private final AtomicIntegerArray builtRows;
+
+	/**
+	 * The file that the tiles are written to.
+	 */
+	private final File tileFile;
+
+	/**
+	 * The channel that tiles are written to and read from.
+	 */
+	private final FileChannel tiles;
+
+	/**
+	 * The tiles that have been read, by level and position. This is also the lock for
+	 * the tiles that have been requested.
+	 */
+	private final TileCache cache;
+
+	/**
+	 * The positions of the tiles that have been requested but not read yet, or that
+	 * could not be read.
+	 */
+	private final Set<Long> requested;
+
+	/**
+	 * The single thread that requested tiles are read on.
+	 */
+	private final ExecutorService loader;
+
+	/**
+	 * The type of the {@code BufferedImage} of each tile.
+	 */
+	private volatile int tileType;
+
+	/**
+	 * The task that is run each time more tiles are available, or {@code null}.
+	 */
+	private volatile Runnable tileListener;
+
+	/**
+	 * Whether this pyramid has been closed.
+	 */
+	private volatile boolean closed;
+
+
+	/**
+	 * The width and height of a tile, in pixels.
+	 */
+	public static final int TILE_SIZE = 256;
+
+	/**
+	 * The largest number of bytes of tiles that are kept in memory by default.
+	 */
+	public static final long DEFAULT_CACHE_BYTES = 64L << 20;
+
+	/**
+	 * The largest number of pixels of the image that are decoded at once while the
+	 * pyramid is built.
+	 */
+	private static final int BAND_PIXELS = 1 << 24;
+
+	/**
+	 * The number of bytes in each pixel of a tile.
+	 */
+	private static final int PIXEL_BYTES = 4;
+
+	/**
+	 * Constructs a new, empty {@code ImagePyramid} for the given image, with the default
+	 * cache size. No tiles are available until the pyramid is built.
+	 * 
+	 * @param source the image file.
+	 * @param width the width of the image, in pixels.
+	 * @param height the height of the image, in pixels.
+	 * @throws IOException if the tile file could not be created.
+	 */
+	public ImagePyramid(File source, int width, int height) throws IOException {
+		this(source, width, height, DEFAULT_CACHE_BYTES);
+	}
+
+	/**
+	 * Constructs a new, empty {@code ImagePyramid} for the given image. No tiles are
+	 * available until the pyramid is built.
+	 * 
+	 * @param source the image file.
+	 * @param width the width of the image, in pixels.
+	 * @param height the height of the image, in pixels.
+	 * @param cacheBytes the largest number of bytes of tiles to keep in memory.
+	 * @throws IOException if the tile file could not be created.
+	 */
+	public ImagePyramid(File source, int width, int height, long cacheBytes)
+			throws IOException {
+		this.source = source;
+		int levels = 1;
+		while ((width - 1) >> (levels - 1) >= TILE_SIZE
+				|| (height - 1) >> (levels - 1) >= TILE_SIZE) {
+			levels++;
+		}
+		this.levelWidths = new int[levels];
+		this.levelHeights = new int[levels];
+		this.levelOffsets = new long[levels];
+		long offset = 0;
+		for (int level = 0; level < levels; level++) {
+			this.levelWidths[level] = (int)(((long)(width) + (1L << level) - 1) >> level);
+			this.levelHeights[level] = (int)(((long)(height) + (1L << level) - 1) >> level);
+			this.levelOffsets[level] = offset;
+			offset += (long)(this.getColumnCount(level)) * this.getRowCount(level);
+		}
+		this.builtRows = new AtomicIntegerArray(levels);
+		this.tileFile = File.createTempFile("pictographer", ".tiles");
+		this.tileFile.deleteOnExit();
+		this.tiles = new RandomAccessFile(this.tileFile, "rw").getChannel();
+		this.cache = new TileCache(cacheBytes);
+		this.requested = new HashSet<Long>();
+		this.loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Tile loader");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.tileType = BufferedImage.TYPE_INT_RGB;
+	}
+
+	/**
+	 * Builds every level of the pyramid. The image is decoded one band at a time, from
+	 * top to bottom, and each band is reduced into every coarser level as it goes, so
+	 * the whole image is never in memory. This may take a long time for a huge image,
+	 * and should not be called on the event dispatch thread. Building stops early if
+	 * this pyramid is closed.
+	 * 
+	 * @throws IOException if the image could not be read, or the tiles could not be
+	 * written.
+	 */
+	public void build() throws IOException {
+		int width = this.getWidth();
+		int height = this.getHeight();
+		int levels = this.getLevelCount();
+		int[][] strips = new int[levels][];
+		int[] stripRows = new int[levels];
+		int[] fedRows = new int[levels];
+		for (int level = 0; level < levels; level++) {
+			strips[level] = new int[this.levelWidths[level] * TILE_SIZE];
+		}
+		int bandHeight = Math.max(1, BAND_PIXELS / width / TILE_SIZE) * TILE_SIZE;
+		int[] row = new int[width];
+		for (int top = 0; top < height && !this.closed; top += bandHeight) {
+			BufferedImage band = ImageLoader.read(this.source, new Rectangle(0, top,
+					width, Math.min(bandHeight, height - top)), 1);
+			if (band == null)
+				throw new IOException(this.source.getName() + " is not an image");
+			if (top == 0 && band.getColorModel().hasAlpha())
+				this.tileType = BufferedImage.TYPE_INT_ARGB;
+			for (int y = 0; y < band.getHeight(); y++) {
+				band.getRGB(0, y, width, 1, row, 0, width);
+				this.addRow(0, row, strips, stripRows, fedRows);
+			}
+		}
+	}
+
+	/**
+	 * Adds a row of pixels to the strip of a level. Once the strip holds a whole row of
+	 * tiles, or the last row of the level, the tiles are written and the strip is
+	 * reduced into the next level.
+	 * 
+	 * @param level the level to add the row to.
+	 * @param row the pixels of the row.
+	 * @param strips the strip of rows that is being filled for each level.
+	 * @param stripRows the number of rows in the strip of each level.
+	 * @param fedRows the number of rows that have been added to each level.
+	 * @throws IOException if the tiles could not be written.
+	 */
+	private void addRow(int level, int[] row, int[][] strips, int[] stripRows,
+			int[] fedRows) throws IOException {
+		int width = this.levelWidths[level];
+		System.arraycopy(row, 0, strips[level], stripRows[level] * width, width);
+		stripRows[level]++;
+		fedRows[level]++;
+		if (stripRows[level] < TILE_SIZE && fedRows[level] < this.levelHeights[level])
+			return;
+		int rows = stripRows[level];
+		int tileRow = (fedRows[level] - 1) / TILE_SIZE;
+		this.writeTiles(level, tileRow, strips[level], rows);
+		stripRows[level] = 0;
+		if (level + 1 < this.getLevelCount()) {
+			int[] reduced = new int[this.levelWidths[level + 1]];
+			for (int y = 0; y < rows; y += 2) {
+				reduce(strips[level], width, y, Math.min(y + 1, rows - 1), reduced);
+				this.addRow(level + 1, reduced, strips, stripRows, fedRows);
+			}
+		}
+		this.builtRows.set(level, tileRow + 1);
+		Runnable listener = this.tileListener;
+		if (level == 0 && listener != null)
+			listener.run();
+	}
+
+	/**
+	 * Writes one row of tiles of a level to the tile file.
+	 * 
+	 * @param level the level of the tiles.
+	 * @param tileRow the index of the row of tiles.
+	 * @param strip the rows of pixels that the tiles are cut from.
+	 * @param rows the number of rows in the strip.
+	 * @throws IOException if the tiles could not be written.
+	 */
+	private void writeTiles(int level, int tileRow, int[] strip, int rows)
+			throws IOException {
+		int width = this.levelWidths[level];
+		ByteBuffer buffer = ByteBuffer.allocate(TILE_SIZE * TILE_SIZE * PIXEL_BYTES);
+		IntBuffer pixels = buffer.asIntBuffer();
+		for (int column = 0; column < this.getColumnCount(level); column++) {
+			int left = column * TILE_SIZE;
+			int tileWidth = Math.min(TILE_SIZE, width - left);
+			pixels.clear();
+			for (int y = 0; y < rows; y++) {
+				pixels.put(strip, y * width + left, tileWidth);
+			}
+			buffer.position(0);
+			buffer.limit(pixels.position() * PIXEL_BYTES);
+			long position = this.getTilePosition(level, column, tileRow);
+			while (buffer.hasRemaining()) {
+				position += this.tiles.write(buffer, position);
+			}
+		}
+	}
+
+	/**
+	 * Reduces two rows of a level into one row of the next level, by averaging each
+	 * square of four pixels. At the right edge of an odd-width level, the last column is
+	 * averaged with itself.
+	 * 
+	 * @param strip the rows of pixels of the level.
+	 * @param width the width of the level.
+	 * @param first the index of the first row within the strip.
+	 * @param second the index of the second row within the strip.
+	 * @param reduced the row to store the reduced pixels in.
+	 */
+	private static void reduce(int[] strip, int width, int first, int second,
+			int[] reduced) {
+		int a = first * width;
+		int b = second * width;
+		for (int x = 0; x < reduced.length; x++) {
+			int left = 2 * x;
+			int right = Math.min(left + 1, width - 1);
+			reduced[x] = average(strip[a + left], strip[a + right], strip[b + left],
+					strip[b + right]);
+		}
+	}
+
+	/**
+	 * Averages four packed ARGB pixels, channel by channel.
+	 * 
+	 * @param p the first pixel.
+	 * @param q the second pixel.
+	 * @param r the third pixel.
+	 * @param s the fourth pixel.
+	 * @return the average pixel.
+	 */
+	private static int average(int p, int q, int r, int s) {
+		int result = 0;
+		for (int shift = 0; shift < 32; shift += 8) {
+			int sum = ((p >>> shift) & 0xFF) + ((q >>> shift) & 0xFF) + ((r >>> shift) & 0xFF)
+					+ ((s >>> shift) & 0xFF);
+			result |= ((sum + 2) >> 2) << shift;
+		}
+		return result;
+	}
+
+	/**
+	 * Gets a tile of the pyramid, reading it from the tile file if it is not in memory.
+	 * 
+	 * @param level the level of the tile.
+	 * @param column the column of the tile within its level.
+	 * @param row the row of the tile within its level.
+	 * @return the tile, or {@code null} if it is outside of the level or has not been
+	 * built yet.
+	 * @throws IOException if the tile could not be read, or this pyramid is closed.
+	 */
+	public BufferedImage getTile(int level, int column, int row) throws IOException {
+		if (!this.isBuilt(level, column, row))
+			return null;
+		Long key = Long.valueOf(this.getTilePosition(level, column, row));
+		BufferedImage tile;
+		synchronized (this.cache) {
+			tile = this.cache.get(key);
+		}
+		if (tile == null)
+			tile = this.readTile(level, column, row);
+		return tile;
+	}
+
+	/**
+	 * Gets a tile of the pyramid if it is in memory. Otherwise, the tile is read from
+	 * the tile file on another thread, and the tile listener is run once it is in
+	 * memory. This method never waits for the tile file, so it can be called while
+	 * painting.
+	 * 
+	 * @param level the level of the tile.
+	 * @param column the column of the tile within its level.
+	 * @param row the row of the tile within its level.
+	 * @return the tile, or {@code null} if it is not in memory yet, is outside of the
+	 * level, has not been built yet, or could not be read.
+	 */
+	public BufferedImage requestTile(final int level, final int column, final int row) {
+		if (this.closed || !this.isBuilt(level, column, row))
+			return null;
+		final Long key = Long.valueOf(this.getTilePosition(level, column, row));
+		synchronized (this.cache) {
+			BufferedImage tile = this.cache.get(key);
+			if (tile != null || !this.requested.add(key))
+				return tile;
+		}
+		try {
+			this.loader.execute(new Runnable() {
+				@Override
+				public void run() {
+					ImagePyramid.this.load(key, level, column, row);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// this pyramid was closed after the check above
+		}
+		return null;
+	}
+
+	/**
+	 * Reads a requested tile on the loader thread, and runs the tile listener. A tile
+	 * that could not be read stays requested, so it is not requested again.
+	 * 
+	 * @param key the position of the tile.
+	 * @param level the level of the tile.
+	 * @param column the column of the tile within its level.
+	 * @param row the row of the tile within its level.
+	 */
+	private void load(Long key, int level, int column, int row) {
+		try {
+			this.readTile(level, column, row);
+		} catch (IOException e) {
+			return;
+		}
+		synchronized (this.cache) {
+			this.requested.remove(key);
+		}
+		Runnable listener = this.tileListener;
+		if (listener != null)
+			listener.run();
+	}
+
+	/**
+	 * Determines if a tile is within its level and has been built.
+	 * 
+	 * @param level the level of the tile.
+	 * @param column the column of the tile within its level.
+	 * @param row the row of the tile within its level.
+	 * @return {@code true} if the tile can be read; {@code false} otherwise.
+	 */
+	private boolean isBuilt(int level, int column, int row) {
+		return level >= 0 && level < this.getLevelCount() && column >= 0
+				&& column < this.getColumnCount(level) && row >= 0
+				&& row < this.builtRows.get(level);
+	}
+
+	/**
+	 * Reads a tile from the tile file, and keeps it in memory.
+	 * 
+	 * @param level the level of the tile.
+	 * @param column the column of the tile within its level.
+	 * @param row the row of the tile within its level.
+	 * @return the tile.
+	 * @throws IOException if the tile could not be read, or this pyramid is closed.
+	 */
+	private BufferedImage readTile(int level, int column, int row) throws IOException {
+		Long key = Long.valueOf(this.getTilePosition(level, column, row));
+		int tileWidth = Math.min(TILE_SIZE, this.levelWidths[level] - column * TILE_SIZE);
+		int tileHeight = Math.min(TILE_SIZE, this.levelHeights[level] - row * TILE_SIZE);
+		BufferedImage tile = new BufferedImage(tileWidth, tileHeight, this.tileType);
+		ByteBuffer buffer = ByteBuffer.allocate(tileWidth * tileHeight * PIXEL_BYTES);
+		long position = key.longValue();
+		while (buffer.hasRemaining()) {
+			int read = this.tiles.read(buffer, position + buffer.position());
+			if (read < 0)
+				throw new IOException("Tile file is truncated");
+		}
+		buffer.flip();
+		buffer.asIntBuffer().get(((DataBufferInt)(tile.getRaster().getDataBuffer()))
+				.getData());
+		synchronized (this.cache) {
+			this.cache.add(key, tile);
+		}
+		return tile;
+	}
+
+	/**
+	 * Gets the position of a tile in the tile file, in bytes. Every tile takes up the
+	 * space of a whole tile, even if it is at the edge of its level.
+	 * 
+	 * @param level the level of the tile.
+	 * @param column the column of the tile within its level.
+	 * @param row the row of the tile within its level.
+	 * @return the position of the tile.
+	 */
+	private long getTilePosition(int level, int column, int row) {
+		long index = this.levelOffsets[level] + (long)(row) * this.getColumnCount(level)
+				+ column;
+		return index * TILE_SIZE * TILE_SIZE * PIXEL_BYTES;
+	}
+
+	/**
+	 * Sets the task that is run each time more tiles are available: when a row of
+	 * full-resolution tiles has been built, and when a requested tile has been read. The
+	 * task is run on the thread that built or read the tiles.
+	 * 
+	 * @param listener the task to run, or {@code null} to run nothing.
+	 */
+	public void setTileListener(Runnable listener) {
+		this.tileListener = listener;
+	}
+
+	/**
+	 * Closes this pyramid. Building stops, no more tiles are read, the tiles in memory
+	 * are dropped, and the tile file is deleted. Closing a pyramid more than once has no
+	 * effect.
+	 */
+	public void close() {
+		if (this.closed)
+			return;
+		this.closed = true;
+		this.loader.shutdownNow();
+		try {
+			this.tiles.close();
+		} catch (IOException e) {
+			// the file is deleted regardless
+		}
+		this.tileFile.delete();
+		synchronized (this.cache) {
+			this.cache.clear();
+			this.cache.bytes = 0;
+			this.requested.clear();
+		}
+	}
+
+	/**
+	 * Determines if every tile of the pyramid has been built.
+	 * 
+	 * @return {@code true} if the pyramid is complete; {@code false} otherwise.
+	 */
+	public boolean isBuilt() {
+		int last = this.getLevelCount() - 1;
+		return this.builtRows.get(last) == this.getRowCount(last);
+	}
+
+	/**
+	 * Gets the width of the image at full resolution.
+	 * 
+	 * @return the width of the image, in pixels.
+	 */
+	public int getWidth() {
+		return this.levelWidths[0];
+	}
+
+	/**
+	 * Gets the height of the image at full resolution.
+	 * 
+	 * @return the height of the image, in pixels.
+	 */
+	public int getHeight() {
+		return this.levelHeights[0];
+	}
+
+	/**
+	 * Gets the number of levels of detail in the pyramid.
+	 * 
+	 * @return the number of levels.
+	 */
+	public int getLevelCount() {
+		return this.levelWidths.length;
+	}
+
+	/**
+	 * Gets the number of columns of tiles in a level.
+	 * 
+	 * @param level the level.
+	 * @return the number of columns.
+	 */
+	public int getColumnCount(int level) {
+		return (this.levelWidths[level] + TILE_SIZE - 1) / TILE_SIZE;
+	}
+
+	/**
+	 * Gets the number of rows of tiles in a level.
+	 * 
+	 * @param level the level.
+	 * @return the number of rows.
+	 */
+	public int getRowCount(int level) {
+		return (this.levelHeights[level] + TILE_SIZE - 1) / TILE_SIZE;
+	}
+
+	/**
+	 * Gets the number of bytes of tiles that are kept in memory.
+	 * 
+	 * @return the size of the cached tiles, in bytes.
+	 */
+	public long getCachedBytes() {
+		synchronized (this.cache) {
+			return this.cache.bytes;
+		}
+	}
+
+	/**
+	 * A {@code TileCache} maps the positions of tiles to the tiles that were read from
+	 * there, and removes the least recently used tiles when they take up too many bytes.
+	 */
+	private static class TileCache extends LinkedHashMap<Long, BufferedImage> {
+
+		/**
+		 * The largest number of bytes of tiles that this cache holds.
+		 */
+		private final long maxBytes;
+
+		/**
+		 * The number of bytes of tiles that this cache holds.
+		 */
+		private long bytes;
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Constructs a new, empty {@code TileCache}.
+		 * 
+		 * @param maxBytes the largest number of bytes of tiles to hold.
+		 */
+		public TileCache(long maxBytes) {
+			super(16, 0.75f, true);
+			this.maxBytes = Math.max(0, maxBytes);
+		}
+
+		/**
+		 * Adds a tile to this cache, and removes the least recently used tiles until
+		 * the cache fits in its size again. The newest tile is always kept.
+		 * 
+		 * @param key the position of the tile.
+		 * @param tile the tile.
+		 */
+		public void add(Long key, BufferedImage tile) {
+			BufferedImage old = this.put(key, tile);
+			if (old != null)
+				this.bytes -= sizeOf(old);
+			this.bytes += sizeOf(tile);
+			while (this.bytes > this.maxBytes && this.size() > 1) {
+				this.bytes -= sizeOf(this.remove(this.keySet().iterator().next()));
+			}
+		}
+
+		/**
+		 * Gets the number of bytes that a tile takes up in memory.
+		 * 
+		 * @param tile the tile.
+		 * @return the size of the tile, in bytes.
+		 */
+		private static long sizeOf(BufferedImage tile) {
+			return (long)(tile.getWidth()) * tile.getHeight() * PIXEL_BYTES;
+		}
+
+	}
+
+}
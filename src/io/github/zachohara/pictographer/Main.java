@@ -16,16 +16,19 @@
 
 package io.github.zachohara.pictographer;
 
+import io.github.zachohara.pictographer.core.RenderMetrics;
 import io.github.zachohara.pictographer.gui.GraphWindow;
 import io.github.zachohara.pictographer.gui.SettingsWindow;
 
+import java.awt.Dimension;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.CancellationException;
 
-import javax.imageio.ImageIO;
-
 /**
  * The {@code Main} class acts as the entry point for the application.
  * 
@@ -34,38 +37,130 @@ import javax.imageio.ImageIO;
 public class Main {
 
 	/**
-	 * The main procedure for entire application.
+	 * The command line argument that starts the application in batch mode.
+	 */
+	public static final String BATCH_ARGUMENT = "--batch";
+
+	/**
+	 * The main procedure for entire application. If the first argument is
+	 * {@value #BATCH_ARGUMENT}, the application renders a manifest of jobs without
+	 * opening any windows; see {@link #runBatch(String[])}. If render metrics are turned
+	 * on, they are printed when the application exits.
 	 * 
 	 * @param args command line arguments.
 	 */
 	public static void main(String[] args) {
-		BufferedImage image = loadImage();
+		if (RenderMetrics.isEnabled())
+			RenderMetrics.dumpOnExit();
+		if (args.length > 0 && args[0].equals(BATCH_ARGUMENT)) {
+			runBatch(args);
+			return;
+		}
 		OptionState options = new OptionState();
-		GraphWindow graphWindow = new GraphWindow(image, options);
+		BufferedImage image = loadImage(options);
+		ImagePyramid pyramid = startPyramid(options.getImageFile(), image);
+		GraphWindow graphWindow = new GraphWindow(image, pyramid, options);
 		SettingsWindow inputWindow = new SettingsWindow(graphWindow, options);
 		graphWindow.setVisible(true);
 		inputWindow.setVisible(true);
 	}
 
+	/**
+	 * Renders a manifest of jobs without opening any windows, and exits. The arguments
+	 * are {@value #BATCH_ARGUMENT}, the manifest file, and optionally the number of
+	 * worker threads and the largest number of images to hold in memory at once.
+	 * 
+	 * @param args command line arguments.
+	 * @see BatchRenderer
+	 */
+	private static void runBatch(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		if (args.length < 2) {
+			System.err.println("Usage: " + BATCH_ARGUMENT + " <manifest> [workers] [images]");
+			System.exit(2);
+		}
+		int workers = Runtime.getRuntime().availableProcessors();
+		int maxImages = workers;
+		int failures;
+		try {
+			if (args.length > 2)
+				workers = Integer.parseInt(args[2]);
+			if (args.length > 3)
+				maxImages = Integer.parseInt(args[3]);
+			List<BatchRenderer.Job> jobs = BatchRenderer.readManifest(new File(args[1]));
+			failures = new BatchRenderer(jobs, workers, maxImages).renderAll();
+		} catch (IOException | IllegalArgumentException | InterruptedException e) {
+			System.err.println(e.getMessage());
+			failures = 1;
+		}
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Starts building an {@code ImagePyramid} of the source image on a background
+	 * thread, if the loaded image is smaller than the source, so that zooming in can show
+	 * the source in full detail. If the pyramid cannot be built, zooming in only
+	 * stretches the loaded image.
+	 * 
+	 * @param file the source image file.
+	 * @param image the image that was loaded from the file.
+	 * @return the pyramid, which may not have been built yet, or {@code null} if the
+	 * loaded image is already at full resolution or the pyramid could not be started.
+	 */
+	private static ImagePyramid startPyramid(File file, BufferedImage image) {
+		final ImagePyramid pyramid;
+		try {
+			Dimension size = ImageLoader.readSize(file);
+			if (size == null || (size.width <= image.getWidth()
+					&& size.height <= image.getHeight()))
+				return null;
+			pyramid = new ImagePyramid(file, size.width, size.height);
+		} catch (IOException e) {
+			return null;
+		}
+		Thread builder = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					pyramid.build();
+				} catch (IOException e) {
+					System.err.println("Could not build the image pyramid: " + e.getMessage());
+				}
+			}
+		}, "Pyramid builder");
+		builder.setDaemon(true);
+		builder.setPriority(Thread.MIN_PRIORITY);
+		builder.start();
+		return pyramid;
+	}
+
 	/**
 	 * Handles all file loading, from the creation of the file dialog, to the rejection of
-	 * invalid files, to handling the user quitting the dialog.
+	 * invalid files, to handling the user quitting the dialog. Images that are larger than
+	 * the screen are decoded at a lower resolution that fits on the screen. The chosen
+	 * file is stored in the given options, so that it can be read again at full
+	 * resolution when the graph is exported.
 	 * 
+	 * @param options the options to store the chosen file in.
 	 * @return a final, fully loaded {@code BufferedImage}.
 	 */
-	private static BufferedImage loadImage() {
+	private static BufferedImage loadImage(OptionState options) {
 		FileSelector dialog = new FileSelector();
+		Rectangle screen = GraphicsEnvironment.getLocalGraphicsEnvironment()
+				.getMaximumWindowBounds();
 		BufferedImage image = null;
 		try {
 			while (image == null) {
 				File chosenFile = dialog.getFile();
 				try {
-					image = ImageIO.read(chosenFile);
+					image = ImageLoader.readToFit(chosenFile, screen.width, screen.height);
 				} catch (IOException e) {
 					FileSelector.warnLoadError(chosenFile.getName());
 				}
 				if (image == null) {
 					FileSelector.warnInvalidType(chosenFile.getName());
+				} else {
+					options.setImageFile(chosenFile);
 				}
 			}
 		} catch (CancellationException e) {
@@ -16,9 +16,18 @@
 
 package io.github.zachohara.pictographer;
 
+import io.github.zachohara.pictographer.core.FunctionParseException;
 import io.github.zachohara.pictographer.core.FunctionParser;
+import io.github.zachohara.pictographer.core.GraphPlotter;
 import io.github.zachohara.pictographer.core.Polynomial;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * An {@code OptionState} object contains all the information inside any graph option
  * pane.
@@ -47,27 +56,82 @@ public class OptionState {
 	 */
 	private double yMax;
 
+	/**
+	 * Whether the graph is evaluated with compensated arithmetic.
+	 */
+	private boolean compensated;
+
+	/**
+	 * The file that the background image was read from, or {@code null} if it is not
+	 * known.
+	 */
+	private File imageFile;
+
 
 	/**
-	 * The {@code String} that the user entered as a function.
+	 * The {@code String} that the user entered as a function, or as several functions
+	 * separated by {@value FunctionParser#FUNCTION_SEPARATOR}.
 	 */
 	private String functionString;
 
 	/**
-	 * The {@code Polynomial} that is generated from the string that the user entered.
+	 * The {@code Polynomial}s that are generated from the string that the user entered,
+	 * leaving out any that are not valid.
+	 */
+	private List<Polynomial> functions;
+
+	/**
+	 * The first error that was found while parsing the string that the user entered, or
+	 * {@code null} if every function was parsed successfully.
+	 */
+	private FunctionParseException functionError;
+
+	/**
+	 * The cache of recently parsed functions.
+	 */
+	private final FunctionCache functionCache;
+
+	/**
+	 * The number of times a function was found in the cache.
+	 */
+	private long cacheHits;
+
+	/**
+	 * The number of times a function had to be parsed because it was not in the cache.
+	 */
+	private long cacheMisses;
+
+
+	/**
+	 * The default number of parsed functions that are kept in the cache.
 	 */
-	private Polynomial function;
+	public static final int DEFAULT_FUNCTION_CACHE_SIZE = 16;
 
 	/**
 	 * Constructs a new {@code OptionState}
 	 */
 	public OptionState() {
+		this(DEFAULT_FUNCTION_CACHE_SIZE);
+	}
+
+	/**
+	 * Constructs a new {@code OptionState} that keeps up to the given number of parsed
+	 * functions in its cache.
+	 * 
+	 * @param functionCacheSize the number of parsed functions to keep.
+	 */
+	public OptionState(int functionCacheSize) {
 		this.xMin = 0;
 		this.xMax = 0;
 		this.yMin = 0;
 		this.yMax = 0;
+		this.compensated = Boolean.getBoolean(GraphPlotter.COMPENSATED_PROPERTY);
 		this.functionString = "";
-		this.function = null;
+		this.functions = Collections.emptyList();
+		this.functionError = null;
+		this.functionCache = new FunctionCache(functionCacheSize);
+		this.cacheHits = 0;
+		this.cacheMisses = 0;
 	}
 
 	/**
@@ -141,11 +205,96 @@ public class OptionState {
 
 	/**
 	 * Gets the {@code Polynomial} that is generated from the string that the user entered.
+	 * If the user entered several functions, this is the first of them.
 	 * 
-	 * @return the {@code Polynomial} of the function.
+	 * @return the {@code Polynomial} of the function, or {@code null} if the string is
+	 * not valid or has no functions.
 	 */
 	public Polynomial getFunction() {
-		return function;
+		if (this.functionError != null || this.functions.isEmpty())
+			return null;
+		return this.functions.get(0);
+	}
+
+	/**
+	 * Gets the {@code Polynomial}s that are generated from the string that the user
+	 * entered, one for each function in the string. Functions that are not valid are
+	 * left out, so that the others can still be drawn.
+	 * 
+	 * @return an unmodifiable list of the valid functions, in order.
+	 */
+	public List<Polynomial> getFunctions() {
+		return this.functions;
+	}
+
+	/**
+	 * Gets the first error that was found while parsing the string that the user
+	 * entered. The position of the error is relative to the start of the function that
+	 * it was found in.
+	 * 
+	 * @return the parse error, or {@code null} if every function was parsed
+	 * successfully.
+	 */
+	public FunctionParseException getFunctionError() {
+		return functionError;
+	}
+
+	/**
+	 * Determines if the graph is evaluated with compensated arithmetic.
+	 * 
+	 * @return {@code true} if the graph is evaluated with compensated arithmetic;
+	 * {@code false} otherwise.
+	 */
+	public boolean isCompensated() {
+		return this.compensated;
+	}
+
+	/**
+	 * Gets the file that the background image was read from. The image is read from it
+	 * again at full resolution when the graph is exported.
+	 * 
+	 * @return the background image file, or {@code null} if it is not known.
+	 */
+	public File getImageFile() {
+		return this.imageFile;
+	}
+
+	/**
+	 * Gets the number of times a function was found in the cache of parsed functions.
+	 * 
+	 * @return the number of cache hits.
+	 */
+	public long getCacheHits() {
+		return this.cacheHits;
+	}
+
+	/**
+	 * Gets the number of times a function had to be parsed because it was not in the
+	 * cache of parsed functions.
+	 * 
+	 * @return the number of cache misses.
+	 */
+	public long getCacheMisses() {
+		return this.cacheMisses;
+	}
+
+	/**
+	 * Gets the largest number of parsed functions that are kept in the cache.
+	 * 
+	 * @return the size of the function cache.
+	 */
+	public int getFunctionCacheSize() {
+		return this.functionCache.maxSize;
+	}
+
+	/**
+	 * Sets the largest number of parsed functions that are kept in the cache. If the
+	 * cache holds more functions than this, the least recently used ones are removed.
+	 * 
+	 * @param functionCacheSize the new size of the function cache.
+	 */
+	public void setFunctionCacheSize(int functionCacheSize) {
+		this.functionCache.resize(functionCacheSize);
 	}
 
 	/**
@@ -184,19 +333,119 @@ public class OptionState {
 		this.yMax = yMax;
 	}
 
+	/**
+	 * Sets whether the graph is evaluated with compensated arithmetic.
+	 * 
+	 * @param compensated whether the graph should be evaluated with compensated
+	 * arithmetic.
+	 */
+	public void setCompensated(boolean compensated) {
+		this.compensated = compensated;
+	}
+
+	/**
+	 * Sets the file that the background image was read from.
+	 * 
+	 * @param imageFile the background image file.
+	 */
+	public void setImageFile(File imageFile) {
+		this.imageFile = imageFile;
+	}
+
 	/**
 	 * Sets a new {@code String} of the function. The String will be converted into a new
 	 * {@code Polynomial} that can be retrieved with the {@link #getFunction()} method.
+	 * If the String is not a valid function, the {@code Polynomial} will be {@code null},
+	 * and the error can be retrieved with the {@link #getFunctionError()} method.
+	 * <p>
+	 * The String may hold several functions, separated by
+	 * {@value FunctionParser#FUNCTION_SEPARATOR}, which can be retrieved with the
+	 * {@link #getFunctions()} method.
+	 * <p>
+	 * Recently parsed functions are cached by their text, ignoring the whitespace that
+	 * the parser ignores (see {@link FunctionParser#normalizeFunction(String)}), so
+	 * setting the same function again, or switching between a few functions, does not
+	 * parse it again. Each function in the String is cached on its own, so changing one
+	 * of several functions only parses that one. Cache hits and misses are counted per
+	 * function.
 	 * 
 	 * @param functionString the {@code String} of the function.
 	 */
 	public void setFunctionString(String functionString) {
+		if (functionString.equals(this.functionString) && this.functionError == null
+				&& !this.functions.isEmpty()) {
+			this.cacheHits += this.functions.size();
+			return;
+		}
 		this.functionString = functionString;
-		try {
-			this.function = FunctionParser.parsePolynomialFunction(functionString);
-		} catch (NumberFormatException e) {
-			this.function = null;
+		this.functionError = null;
+		List<Polynomial> parsed = new ArrayList<Polynomial>();
+		for (String function : FunctionParser.splitFunctions(functionString)) {
+			String key = FunctionParser.normalizeFunction(function);
+			Polynomial cached = this.functionCache.get(key);
+			if (cached != null) {
+				this.cacheHits++;
+				parsed.add(cached);
+				continue;
+			}
+			this.cacheMisses++;
+			try {
+				Polynomial polynomial = FunctionParser.parsePolynomialFunction(function);
+				this.functionCache.put(key, polynomial);
+				parsed.add(polynomial);
+			} catch (FunctionParseException e) {
+				if (this.functionError == null)
+					this.functionError = e;
+			}
 		}
+		this.functions = Collections.unmodifiableList(parsed);
+	}
+
+	/**
+	 * A {@code FunctionCache} maps function strings to the {@code Polynomial} objects
+	 * that were parsed from them, and removes the least recently used entry when it holds
+	 * too many.
+	 */
+	private static class FunctionCache extends LinkedHashMap<String, Polynomial> {
+
+		/**
+		 * The largest number of entries that this cache holds.
+		 */
+		private int maxSize;
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Constructs a new, empty {@code FunctionCache}.
+		 * 
+		 * @param maxSize the largest number of entries to hold.
+		 */
+		public FunctionCache(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = Math.max(0, maxSize);
+		}
+
+		/**
+		 * Changes the largest number of entries that this cache holds, and removes the
+		 * least recently used entries if there are now too many.
+		 * 
+		 * @param maxSize the largest number of entries to hold.
+		 */
+		public void resize(int maxSize) {
+			this.maxSize = Math.max(0, maxSize);
+			while (this.size() > this.maxSize) {
+				this.remove(this.keySet().iterator().next());
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Polynomial> eldest) {
+			return this.size() > this.maxSize;
+		}
+
 	}
 
-}
\ No newline at end of file
+}
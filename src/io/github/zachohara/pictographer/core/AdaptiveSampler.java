@@ -0,0 +1,638 @@
+/* Copyright (C) 2015 Zach Ohara
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.zachohara.pictographer.core;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * An {@code AdaptiveSampler} calculates the points that are needed to draw a
+ * {@code Polynomial} as a set of connected polylines. It starts from an evenly spaced
+ * set of segments, and splits any segment that a straight line would not follow
+ * closely enough, using the derivative of the polynomial to find where the curve bends.
+ * Flat regions are covered by a few long segments, and steep or curved regions by many
+ * short ones. Unless compensated arithmetic is used, the ends of the evenly spaced
+ * segments are all calculated at once with
+ * {@link Polynomial#sampleUniform(double, double, int, double[])}, which uses forward
+ * differences for low-degree polynomials.
+ * <p>
+ * Segments that interval arithmetic shows to lie entirely above or below the culling
+ * range, set with {@link #setCullingRange(double, double)}, are never split, since
+ * their line segments would not be seen anyway. When the graph is zoomed in on a small
+ * part of a steep curve, this keeps the cost of sampling in proportion to the part
+ * of the curve that can be seen.
+ * <p>
+ * Once sampled, the points can be refined for a tighter tolerance or a wider culling
+ * range with {@link #resample(double, BooleanSupplier)}, which only splits the
+ * segments that no longer follow the curve closely enough, instead of sampling the
+ * whole range again.
+ * <p>
+ * Wherever the polynomial is undefined (for example, a fractional exponent of a
+ * negative number), the current polyline ends, and a new one starts where the
+ * polynomial is defined again. A polynomial with a negative exponent has a pole at
+ * zero, and the polyline ends there too: the segment that crosses zero is split as far
+ * as it can be and then left out, so the two sides of the pole are never joined.
+ * <p>
+ * A sampler reuses its buffers between calls to
+ * {@link #sample(Polynomial, double, double, int, double, double)}, so it should not be
+ * shared between threads.
+ * 
+ * @author Zach Ohara
+ */
+public class AdaptiveSampler {
+
+	/**
+	 * The x-coordinates of the sampled points.
+	 */
+	private double[] xValues;
+
+	/**
+	 * The y-coordinates of the sampled points.
+	 */
+	private double[] yValues;
+
+	/**
+	 * The slopes of the curve at the sampled points.
+	 */
+	private double[] slopes;
+
+	/**
+	 * Whether the segment that ends at each sampled point was left unsplit only because
+	 * it was outside of the culling range.
+	 */
+	private boolean[] culled;
+
+	/**
+	 * The number of sampled points.
+	 */
+	private int pointCount;
+
+	/**
+	 * The index of the first point of each polyline.
+	 */
+	private int[] polylineStarts;
+
+	/**
+	 * The number of polylines.
+	 */
+	private int polylineCount;
+
+	/**
+	 * Whether the last sampled point was defined, so that the next point continues the
+	 * same polyline.
+	 */
+	private boolean polylineOpen;
+
+	/**
+	 * The number of times the polynomial or its derivative was evaluated during the last
+	 * call to {@link #sample(Polynomial, double, double, int, double, double)}.
+	 */
+	private int evaluationCount;
+
+
+	/**
+	 * The polynomial being sampled.
+	 */
+	private Polynomial function;
+
+	/**
+	 * The operator that evaluates the polynomial being sampled.
+	 */
+	private DoubleUnaryOperator valueOperator;
+
+	/**
+	 * The operator that evaluates the derivative of the polynomial being sampled, or
+	 * {@code null} if that polynomial has no terms.
+	 */
+	private DoubleUnaryOperator slopeOperator;
+
+	/**
+	 * Whether the polynomial is evaluated with compensated arithmetic.
+	 */
+	private boolean compensated;
+
+	/**
+	 * Whether the polynomial being sampled has a pole at zero, because it has a negative
+	 * exponent.
+	 */
+	private boolean pole;
+
+	/**
+	 * The largest distance, in y, that a segment may stray from the curve.
+	 */
+	private double yTolerance;
+
+	/**
+	 * The shortest segment, in x, that will be split any further.
+	 */
+	private double minStep;
+
+	/**
+	 * The lowest y-value that may be seen. Segments entirely below it are not split.
+	 */
+	private double cullMin;
+
+	/**
+	 * The highest y-value that may be seen. Segments entirely above it are not split.
+	 */
+	private double cullMax;
+
+	/**
+	 * The array that holds the bounds of the polynomial over a segment.
+	 */
+	private final double[] bounds;
+
+	/**
+	 * The y-values at the ends of the evenly spaced segments.
+	 */
+	private double[] seedValues;
+
+	/**
+	 * The slopes at the ends of the evenly spaced segments.
+	 */
+	private double[] seedSlopes;
+
+
+	/**
+	 * The number of times a single segment may be split in half.
+	 */
+	public static final int MAX_DEPTH = 24;
+
+	/**
+	 * The initial length of the point buffers.
+	 */
+	private static final int INITIAL_CAPACITY = 256;
+
+	/**
+	 * Constructs a new {@code AdaptiveSampler} with no points.
+	 */
+	public AdaptiveSampler() {
+		this.xValues = new double[INITIAL_CAPACITY];
+		this.yValues = new double[INITIAL_CAPACITY];
+		this.slopes = new double[INITIAL_CAPACITY];
+		this.culled = new boolean[INITIAL_CAPACITY];
+		this.polylineStarts = new int[INITIAL_CAPACITY];
+		this.pointCount = 0;
+		this.polylineCount = 0;
+		this.evaluationCount = 0;
+		this.valueOperator = null;
+		this.slopeOperator = null;
+		this.compensated = false;
+		this.pole = false;
+		this.function = null;
+		this.yTolerance = Double.POSITIVE_INFINITY;
+		this.cullMin = Double.NEGATIVE_INFINITY;
+		this.cullMax = Double.POSITIVE_INFINITY;
+		this.bounds = new double[2];
+		this.seedValues = new double[0];
+		this.seedSlopes = new double[0];
+	}
+
+	/**
+	 * Sets the range of y-values that may be seen. Segments of the curve that lie
+	 * entirely outside of this range are drawn as a single straight line, which also
+	 * lies outside of it, instead of being split. By default, every segment may be
+	 * seen. This takes effect from the next call to
+	 * {@link #sample(Polynomial, double, double, int, double, double)} or
+	 * {@link #resample(double, BooleanSupplier)}.
+	 * 
+	 * @param yMin the lowest y-value that may be seen.
+	 * @param yMax the highest y-value that may be seen.
+	 */
+	public void setCullingRange(double yMin, double yMax) {
+		this.cullMin = Math.min(yMin, yMax);
+		this.cullMax = Math.max(yMin, yMax);
+	}
+
+	/**
+	 * Gets the lowest y-value of the culling range.
+	 * 
+	 * @return the lowest y-value that may be seen.
+	 */
+	public double getCullMin() {
+		return this.cullMin;
+	}
+
+	/**
+	 * Gets the highest y-value of the culling range.
+	 * 
+	 * @return the highest y-value that may be seen.
+	 */
+	public double getCullMax() {
+		return this.cullMax;
+	}
+
+	/**
+	 * Gets the largest distance, in y, that the segments of the sampled points may
+	 * stray from the curve.
+	 * 
+	 * @return the tolerance that the points were last sampled or refined with, or
+	 * infinity if nothing has been sampled.
+	 */
+	public double getTolerance() {
+		return this.yTolerance;
+	}
+
+	/**
+	 * Determines if this sampler evaluates polynomials with compensated arithmetic.
+	 * 
+	 * @return {@code true} if polynomials are evaluated with
+	 * {@link Polynomial#compensatedValueAt(double)}; {@code false} otherwise.
+	 */
+	public boolean isCompensated() {
+		return this.compensated;
+	}
+
+	/**
+	 * Sets whether this sampler evaluates polynomials, and their derivatives, with
+	 * compensated arithmetic. This takes effect from the next call to
+	 * {@link #sample(Polynomial, double, double, int, double, double)}.
+	 * 
+	 * @param compensated whether polynomials should be evaluated with
+	 * {@link Polynomial#compensatedValueAt(double)}.
+	 */
+	public void setCompensated(boolean compensated) {
+		this.compensated = compensated;
+	}
+
+	/**
+	 * Samples the given polynomial between two x-coordinates, replacing any points that
+	 * were sampled before.
+	 * 
+	 * @param function the polynomial to sample.
+	 * @param xStart the x-coordinate to start sampling at.
+	 * @param xEnd the x-coordinate to stop sampling at.
+	 * @param segments the number of evenly spaced segments to start with.
+	 * @param yTolerance the largest distance, in y, that a segment may stray from the
+	 * curve before it is split.
+	 * @param minStep the shortest segment, in x, that will be split any further.
+	 */
+	public void sample(Polynomial function, double xStart, double xEnd, int segments,
+			double yTolerance, double minStep) {
+		this.sample(function, xStart, xEnd, segments, yTolerance, minStep, null);
+	}
+
+	/**
+	 * Samples the given polynomial between two x-coordinates, replacing any points that
+	 * were sampled before. Sampling stops early, leaving only the points sampled so far,
+	 * if the given condition becomes {@code true}; it is checked before each of the
+	 * initial segments.
+	 * 
+	 * @param function the polynomial to sample.
+	 * @param xStart the x-coordinate to start sampling at.
+	 * @param xEnd the x-coordinate to stop sampling at.
+	 * @param segments the number of evenly spaced segments to start with.
+	 * @param yTolerance the largest distance, in y, that a segment may stray from the
+	 * curve before it is split.
+	 * @param minStep the shortest segment, in x, that will be split any further.
+	 * @param cancelled the condition for stopping early, or {@code null} to always
+	 * sample every segment.
+	 * @return {@code true} if every segment was sampled; {@code false} if sampling
+	 * stopped early.
+	 */
+	public boolean sample(Polynomial function, double xStart, double xEnd, int segments,
+			double yTolerance, double minStep, BooleanSupplier cancelled) {
+		Polynomial derivative = function.derivative();
+		this.function = function;
+		this.pole = function.getLowestExponent() < 0;
+		this.valueOperator = function.toOperator(this.compensated);
+		this.slopeOperator = (derivative == null) ? null
+				: derivative.toOperator(this.compensated);
+		this.yTolerance = yTolerance;
+		this.minStep = minStep;
+		this.pointCount = 0;
+		this.polylineCount = 0;
+		this.polylineOpen = false;
+		this.evaluationCount = 0;
+		segments = Math.max(1, segments);
+		double step = (xEnd - xStart) / segments;
+		boolean seeded = !this.compensated;
+		if (seeded)
+			this.seed(function, derivative, xStart, step, segments);
+		double xa = xStart;
+		double fa = seeded ? this.seedValues[0] : this.valueAt(xa);
+		double da = seeded ? this.seedSlopes[0] : this.slopeAt(xa);
+		this.addPoint(xa, fa, da, false);
+		for (int i = 1; i <= segments; i++) {
+			if (cancelled != null && cancelled.getAsBoolean())
+				return false;
+			boolean last = i == segments;
+			double xb = last ? xEnd : xStart + i * step;
+			double fb = (seeded && !last) ? this.seedValues[i] : this.valueAt(xb);
+			double db = (seeded && !last) ? this.seedSlopes[i] : this.slopeAt(xb);
+			this.refine(xa, fa, da, xb, fb, db, 0);
+			xa = xb;
+			fa = fb;
+			da = db;
+		}
+		return true;
+	}
+
+	/**
+	 * Refines the points that were last sampled for a new tolerance, and for the
+	 * culling range that was last set, replacing them. If the tolerance is tighter than
+	 * before, every segment is checked again; otherwise, only the segments that were
+	 * left unsplit because they were out of sight are checked, so the culling range
+	 * should only be widened. Either way, the new tolerance is the one that every segment
+	 * is guaranteed to meet from then on. Segments that are checked are split as needed,
+	 * exactly as they would be while sampling, and the rest are kept as they were.
+	 * Refining stops early, leaving the points incomplete, if the given condition becomes
+	 * {@code true}; it is checked before each segment.
+	 * 
+	 * @param yTolerance the largest distance, in y, that a segment may stray from the
+	 * curve before it is split.
+	 * @param cancelled the condition for stopping early, or {@code null} to always
+	 * refine every segment.
+	 * @return {@code true} if every segment was refined; {@code false} if refining
+	 * stopped early.
+	 */
+	public boolean resample(double yTolerance, BooleanSupplier cancelled) {
+		boolean tighter = yTolerance < this.yTolerance;
+		this.yTolerance = yTolerance;
+		this.evaluationCount = 0;
+		int count = this.pointCount;
+		int lines = this.polylineCount;
+		double[] xs = Arrays.copyOf(this.xValues, count);
+		double[] ys = Arrays.copyOf(this.yValues, count);
+		double[] ds = Arrays.copyOf(this.slopes, count);
+		boolean[] wasCulled = Arrays.copyOf(this.culled, count);
+		int[] starts = Arrays.copyOf(this.polylineStarts, lines);
+		this.pointCount = 0;
+		this.polylineCount = 0;
+		for (int line = 0; line < lines; line++) {
+			int first = starts[line];
+			int end = (line + 1 < lines) ? starts[line + 1] : count;
+			this.polylineOpen = false;
+			this.addPoint(xs[first], ys[first], ds[first], false);
+			for (int k = first + 1; k < end; k++) {
+				if (cancelled != null && cancelled.getAsBoolean())
+					return false;
+				if (tighter || wasCulled[k])
+					this.refine(xs[k - 1], ys[k - 1], ds[k - 1], xs[k], ys[k], ds[k], 0);
+				else
+					this.addPoint(xs[k], ys[k], ds[k], false);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Calculates the y-values and slopes at the start of each of the evenly spaced
+	 * segments, with {@link Polynomial#sampleUniform(double, double, int, double[])}.
+	 * The end of the last segment is left out, since it is evaluated exactly at the end
+	 * of the range.
+	 * 
+	 * @param function the polynomial to sample.
+	 * @param derivative the derivative of the polynomial, or {@code null}.
+	 * @param xStart the x-coordinate to start sampling at.
+	 * @param step the width of each segment.
+	 * @param segments the number of segments.
+	 */
+	private void seed(Polynomial function, Polynomial derivative, double xStart,
+			double step, int segments) {
+		if (this.seedValues.length < segments) {
+			this.seedValues = new double[segments];
+			this.seedSlopes = new double[segments];
+		}
+		function.sampleUniform(xStart, step, segments, this.seedValues);
+		this.evaluationCount += segments;
+		if (derivative == null) {
+			Arrays.fill(this.seedSlopes, 0, segments, Double.NaN);
+		} else {
+			derivative.sampleUniform(xStart, step, segments, this.seedSlopes);
+			this.evaluationCount += segments;
+		}
+	}
+
+	/**
+	 * Adds the end point of a segment, after splitting the segment as many times as
+	 * needed for straight lines to follow the curve. The start point of the segment must
+	 * already have been added.
+	 * <p>
+	 * A segment is accepted when the curve at its midpoint is close enough to the chord,
+	 * and when the slopes at its ends are close enough that the cubic through both ends
+	 * would also stay close to the chord. A segment that crosses a pole is never accepted;
+	 * once it cannot be split any further, the current polyline ends before its end point.
+	 * 
+	 * @param xa the x-coordinate of the start of the segment.
+	 * @param fa the y-value at the start of the segment.
+	 * @param da the slope at the start of the segment.
+	 * @param xb the x-coordinate of the end of the segment.
+	 * @param fb the y-value at the end of the segment.
+	 * @param db the slope at the end of the segment.
+	 * @param depth the number of times this segment has already been split.
+	 */
+	private void refine(double xa, double fa, double da, double xb, double fb, double db,
+			int depth) {
+		double width = xb - xa;
+		boolean aDefined = isDefined(fa);
+		boolean bDefined = isDefined(fb);
+		boolean crossesPole = this.crossesPole(xa, xb);
+		if (Math.abs(width) <= this.minStep || depth >= MAX_DEPTH
+				|| (!aDefined && !bDefined)) {
+			if (crossesPole)
+				this.polylineOpen = false;
+			this.addPoint(xb, fb, db, false);
+			return;
+		}
+		if (aDefined && bDefined && !crossesPole && this.isCulled(xa, fa, xb, fb)) {
+			this.addPoint(xb, fb, db, true);
+			return;
+		}
+		double xm = xa + width / 2;
+		double fm = this.valueAt(xm);
+		double dm = this.slopeAt(xm);
+		if (aDefined && bDefined && !crossesPole && isDefined(fm)) {
+			double chordError = Math.abs(fm - (fa + fb) / 2);
+			double slopeError = Math.abs((da - db) * width / 8);
+			if (chordError <= this.yTolerance && slopeError <= this.yTolerance) {
+				this.addPoint(xb, fb, db, false);
+				return;
+			}
+		}
+		this.refine(xa, fa, da, xm, fm, dm, depth + 1);
+		this.refine(xm, fm, dm, xb, fb, db, depth + 1);
+	}
+
+	/**
+	 * Determines if a segment crosses the pole of the polynomial being sampled. Like
+	 * {@link RootFinder}, this treats any segment that contains zero as crossing the pole
+	 * if the polynomial has a negative exponent.
+	 * 
+	 * @param xa the x-coordinate of the start of the segment.
+	 * @param xb the x-coordinate of the end of the segment.
+	 * @return {@code true} if the curve is not continuous over the segment;
+	 * {@code false} otherwise.
+	 */
+	private boolean crossesPole(double xa, double xb) {
+		return this.pole && Math.min(xa, xb) <= 0 && Math.max(xa, xb) >= 0;
+	}
+
+	/**
+	 * Determines if a segment of the curve lies entirely outside of the culling range,
+	 * on one side of it. The ends of the segment are checked first, since a segment
+	 * whose ends are not both on the same side cannot be culled, and only then is the
+	 * polynomial bounded with interval arithmetic.
+	 * 
+	 * @param xa the x-coordinate of the start of the segment.
+	 * @param fa the y-value at the start of the segment.
+	 * @param xb the x-coordinate of the end of the segment.
+	 * @param fb the y-value at the end of the segment.
+	 * @return {@code true} if the curve cannot be seen anywhere in the segment;
+	 * {@code false} otherwise.
+	 */
+	private boolean isCulled(double xa, double fa, double xb, double fb) {
+		boolean below = fa < this.cullMin && fb < this.cullMin;
+		boolean above = fa > this.cullMax && fb > this.cullMax;
+		if (!below && !above)
+			return false;
+		this.function.boundsOver(xa, xb, this.bounds);
+		return below ? this.bounds[1] < this.cullMin : this.bounds[0] > this.cullMax;
+	}
+
+	/**
+	 * Calculates the y-value of the sampled polynomial at the given x-coordinate.
+	 * 
+	 * @param x the x-coordinate to calculate a y-value for.
+	 * @return the y-value at the given x-value.
+	 */
+	private double valueAt(double x) {
+		this.evaluationCount++;
+		return this.valueOperator.applyAsDouble(x);
+	}
+
+	/**
+	 * Calculates the slope of the sampled polynomial at the given x-coordinate.
+	 * 
+	 * @param x the x-coordinate to calculate the slope at.
+	 * @return the slope at the given x-value, or {@code NaN} if the polynomial has no
+	 * terms.
+	 */
+	private double slopeAt(double x) {
+		if (this.slopeOperator == null)
+			return Double.NaN;
+		this.evaluationCount++;
+		return this.slopeOperator.applyAsDouble(x);
+	}
+
+	/**
+	 * Adds a point to the current polyline, or starts a new polyline if the last point
+	 * was undefined. An undefined point is not stored, but ends the current polyline.
+	 * 
+	 * @param x the x-coordinate of the point.
+	 * @param y the y-coordinate of the point.
+	 * @param slope the slope of the curve at the point.
+	 * @param culled whether the segment that ends at the point was left unsplit only
+	 * because it was out of sight.
+	 */
+	private void addPoint(double x, double y, double slope, boolean culled) {
+		if (!isDefined(y)) {
+			this.polylineOpen = false;
+			return;
+		}
+		if (this.pointCount == this.xValues.length) {
+			this.xValues = Arrays.copyOf(this.xValues, this.pointCount * 2);
+			this.yValues = Arrays.copyOf(this.yValues, this.pointCount * 2);
+			this.slopes = Arrays.copyOf(this.slopes, this.pointCount * 2);
+			this.culled = Arrays.copyOf(this.culled, this.pointCount * 2);
+		}
+		if (!this.polylineOpen) {
+			if (this.polylineCount == this.polylineStarts.length) {
+				this.polylineStarts = Arrays.copyOf(this.polylineStarts,
+						this.polylineCount * 2);
+			}
+			this.polylineStarts[this.polylineCount] = this.pointCount;
+			this.polylineCount++;
+			this.polylineOpen = true;
+		}
+		this.xValues[this.pointCount] = x;
+		this.yValues[this.pointCount] = y;
+		this.slopes[this.pointCount] = slope;
+		this.culled[this.pointCount] = culled;
+		this.pointCount++;
+	}
+
+	/**
+	 * Determines if a y-value can be drawn.
+	 * 
+	 * @param y the y-value to check.
+	 * @return {@code true} if the value is finite; {@code false} otherwise.
+	 */
+	private static boolean isDefined(double y) {
+		return !Double.isNaN(y) && !Double.isInfinite(y);
+	}
+
+	/**
+	 * Gets the x-coordinates of the sampled points. Only the first
+	 * {@link #getPointCount()} elements are used.
+	 * 
+	 * @return the x-coordinates of the sampled points.
+	 */
+	public double[] getXValues() {
+		return this.xValues;
+	}
+
+	/**
+	 * Gets the y-coordinates of the sampled points. Only the first
+	 * {@link #getPointCount()} elements are used.
+	 * 
+	 * @return the y-coordinates of the sampled points.
+	 */
+	public double[] getYValues() {
+		return this.yValues;
+	}
+
+	/**
+	 * Gets the number of sampled points.
+	 * 
+	 * @return the number of sampled points.
+	 */
+	public int getPointCount() {
+		return this.pointCount;
+	}
+
+	/**
+	 * Gets the index of the first point of each polyline. Only the first
+	 * {@link #getPolylineCount()} elements are used.
+	 * 
+	 * @return the index of the first point of each polyline.
+	 */
+	public int[] getPolylineStarts() {
+		return this.polylineStarts;
+	}
+
+	/**
+	 * Gets the number of polylines.
+	 * 
+	 * @return the number of polylines.
+	 */
+	public int getPolylineCount() {
+		return this.polylineCount;
+	}
+
+	/**
+	 * Gets the number of times the polynomial or its derivative was evaluated during the
+	 * last call to {@link #sample(Polynomial, double, double, int, double, double)}.
+	 * 
+	 * @return the number of evaluations.
+	 */
+	public int getEvaluationCount() {
+		return this.evaluationCount;
+	}
+
+}
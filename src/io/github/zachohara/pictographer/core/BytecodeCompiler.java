@@ -0,0 +1,466 @@
+/* Copyright (C) 2015 Zach Ohara
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.zachohara.pictographer.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * The {@code BytecodeCompiler} class contains static methods for turning a
+ * {@code Polynomial} into a generated class that implements
+ * {@code DoubleUnaryOperator}. Every term is unrolled into straight-line bytecode, with
+ * the coefficients and exponents stored as constants, so the JIT compiler can inline the
+ * whole polynomial into the loop that evaluates it. The generated code does exactly the
+ * same floating-point operations as the interpreted path, in the same order, so it gives
+ * exactly the same y-values; each generated operator is checked against the interpreted
+ * path at a few x-coordinates before it is used.
+ * <p>
+ * The generated classes are hidden classes, so they can be unloaded as soon as the
+ * operator that was created from them is no longer used. The compiler can be turned
+ * off with {@link #setEnabled(boolean)}, or by setting the system property
+ * {@value #ENABLED_PROPERTY} to {@code false}; polynomials are then evaluated by the
+ * interpreted path in {@link Polynomial#valueAt(double)}.
+ * 
+ * @author Zach Ohara
+ */
+public final class BytecodeCompiler {
+
+	/**
+	 * The {@code BytecodeCompiler} class should not be instantiable.
+	 */
+	private BytecodeCompiler() {
+
+	}
+
+	/**
+	 * The system property that turns the compiler off when it is {@code false}.
+	 */
+	public static final String ENABLED_PROPERTY = "pictographer.bytecode";
+
+	/**
+	 * The largest number of bytes of bytecode that will be generated for a polynomial.
+	 * HotSpot never compiles a method that is larger than this, so a larger generated
+	 * method would stay in the bytecode interpreter, which is much slower than the
+	 * interpreted path of {@code Polynomial}. Larger polynomials are not compiled.
+	 */
+	public static final int MAX_CODE_SIZE = 8000;
+
+	/**
+	 * The fewest bytes of bytecode that any term can be compiled to, which is the size
+	 * of one step of Horner's scheme.
+	 */
+	private static final int MIN_TERM_SIZE = 6;
+
+	/**
+	 * The x-coordinates at which each generated operator is checked against the
+	 * interpreted path.
+	 */
+	private static final double[] CHECK_POINTS = {-2.5, -1.7, -0.3, 0, 0.6, 1.7, 3.1};
+
+	/**
+	 * Whether polynomials should be compiled into generated classes.
+	 */
+	private static volatile boolean enabled =
+			!"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY));
+
+	/**
+	 * The internal name of the generated classes. Hidden classes must be in the same
+	 * package as the lookup that defines them.
+	 */
+	private static final String CLASS_NAME =
+			"io/github/zachohara/pictographer/core/GeneratedPolynomial";
+
+	/**
+	 * The magic number and version (Java 8) of the generated class files. Version 52 is
+	 * the last version that does not need stack map frames, which straight-line code
+	 * would not use anyway.
+	 */
+	private static final int MAGIC = 0xCAFEBABE;
+	private static final int MAJOR_VERSION = 52;
+
+	/**
+	 * Constant pool tags.
+	 */
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_DOUBLE = 6;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	/**
+	 * Access flags.
+	 */
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+
+	/**
+	 * Opcodes.
+	 */
+	private static final int DCONST_0 = 0x0e;
+	private static final int LDC2_W = 0x14;
+	private static final int DLOAD_1 = 0x27;
+	private static final int DLOAD_3 = 0x29;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int DSTORE_3 = 0x4a;
+	private static final int DUP2 = 0x5c;
+	private static final int DADD = 0x63;
+	private static final int DMUL = 0x6b;
+	private static final int DRETURN = 0xaf;
+	private static final int RETURN = 0xb1;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int INVOKESTATIC = 0xb8;
+
+	/**
+	 * Determines if polynomials are compiled into generated classes.
+	 * 
+	 * @return {@code true} if the compiler is turned on; {@code false} otherwise.
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Turns the compiler on or off. Operators that were already generated are not
+	 * affected.
+	 * 
+	 * @param enable {@code true} to turn the compiler on; {@code false} to turn it off.
+	 */
+	public static void setEnabled(boolean enable) {
+		enabled = enable;
+	}
+
+	/**
+	 * Generates a class that evaluates the given canonical terms, and returns an
+	 * instance of it.
+	 * 
+	 * @param exponents the distinct exponents, in increasing order.
+	 * @param coefficients the coefficient of each exponent.
+	 * @param dense the coefficients indexed by exponent, or {@code null} if the terms
+	 * are stored sparsely.
+	 * @param gaps the first exponent, followed by the difference between each exponent
+	 * and the one before it, or {@code null} if the terms should be evaluated one by one
+	 * with {@code Math.pow}.
+	 * @param reference the interpreted path for the same terms, which the generated
+	 * operator must agree with exactly.
+	 * @return the generated operator, or {@code null} if the terms could not be
+	 * compiled, their code would be larger than {@value #MAX_CODE_SIZE} bytes, or the
+	 * generated operator does not agree with the interpreted path.
+	 */
+	static DoubleUnaryOperator compile(double[] exponents, double[] coefficients,
+			double[] dense, int[] gaps, DoubleUnaryOperator reference) {
+		if (!enabled)
+			return null;
+		if ((long)(dense != null ? dense.length : exponents.length) * MIN_TERM_SIZE
+				> MAX_CODE_SIZE)
+			return null;
+		try {
+			byte[] bytes = new ClassWriter().write(exponents, coefficients, dense, gaps);
+			if (bytes == null)
+				return null;
+			Class<?> generated = MethodHandles.lookup().defineHiddenClass(bytes, true)
+					.lookupClass();
+			DoubleUnaryOperator operator =
+					(DoubleUnaryOperator)(generated.getConstructor().newInstance());
+			for (double x : CHECK_POINTS) {
+				if (Double.doubleToLongBits(operator.applyAsDouble(x))
+						!= Double.doubleToLongBits(reference.applyAsDouble(x)))
+					return null;
+			}
+			return operator;
+		} catch (IOException | ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * A {@code ClassWriter} builds the class file for a single generated polynomial.
+	 */
+	private static class ClassWriter {
+
+		/**
+		 * The entries of the constant pool, in order.
+		 */
+		private final ByteArrayOutputStream pool;
+
+		/**
+		 * The index that the next constant pool entry will have.
+		 */
+		private int poolSize;
+
+		/**
+		 * The index of each double constant that is already in the pool, by its bits.
+		 */
+		private final Map<Long, Integer> doubles;
+
+		/**
+		 * Constructs a new {@code ClassWriter} with an empty constant pool.
+		 */
+		public ClassWriter() {
+			this.pool = new ByteArrayOutputStream();
+			this.poolSize = 1;
+			this.doubles = new HashMap<Long, Integer>();
+		}
+
+		/**
+		 * Writes the class file for the given terms.
+		 * 
+		 * @param exponents the distinct exponents, in increasing order.
+		 * @param coefficients the coefficient of each exponent.
+		 * @param dense the coefficients indexed by exponent, or {@code null}.
+		 * @param gaps the differences between consecutive exponents, or {@code null}.
+		 * @return the bytes of the class file, or {@code null} if the code of the
+		 * method would be larger than {@value #MAX_CODE_SIZE} bytes.
+		 * @throws IOException never, in practice, since only memory is written to.
+		 */
+		public byte[] write(double[] exponents, double[] coefficients, double[] dense,
+				int[] gaps) throws IOException {
+			int thisClass = this.addClass(CLASS_NAME);
+			int objectClass = this.addClass("java/lang/Object");
+			int operatorClass = this.addClass("java/util/function/DoubleUnaryOperator");
+			int init = this.addUtf8("<init>");
+			int initType = this.addUtf8("()V");
+			int objectInit = this.addMethodref(objectClass, init, initType);
+			int apply = this.addUtf8("applyAsDouble");
+			int applyType = this.addUtf8("(D)D");
+			int code = this.addUtf8("Code");
+			int pow = 0;
+			if (dense == null && gaps == null)
+				pow = this.addMethodref(this.addClass("java/lang/Math"), this.addUtf8("pow"),
+						this.addUtf8("(DD)D"));
+
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			DataOutputStream ops = new DataOutputStream(body);
+			if (dense != null) {
+				this.loadDouble(ops, dense[dense.length - 1]);
+				for (int i = dense.length - 2; i >= 0; i--) {
+					ops.writeByte(DLOAD_1);
+					ops.writeByte(DMUL);
+					this.loadDouble(ops, dense[i]);
+					ops.writeByte(DADD);
+				}
+			} else if (gaps != null) {
+				int last = exponents.length - 1;
+				this.loadDouble(ops, coefficients[last]);
+				for (int i = last - 1; i >= -1; i--) {
+					if (gaps[i + 1] > 0) {
+						writePowInt(ops, gaps[i + 1]);
+						ops.writeByte(DMUL);
+					}
+					if (i >= 0) {
+						this.loadDouble(ops, coefficients[i]);
+						ops.writeByte(DADD);
+					}
+				}
+			} else {
+				ops.writeByte(DCONST_0);
+				for (int i = 0; i < exponents.length; i++) {
+					this.loadDouble(ops, coefficients[i]);
+					ops.writeByte(DLOAD_1);
+					this.loadDouble(ops, exponents[i]);
+					ops.writeByte(INVOKESTATIC);
+					ops.writeShort(pow);
+					ops.writeByte(DMUL);
+					ops.writeByte(DADD);
+				}
+			}
+			ops.writeByte(DRETURN);
+			if (body.size() > MAX_CODE_SIZE)
+				return null;
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(MAGIC);
+			out.writeShort(0);
+			out.writeShort(MAJOR_VERSION);
+			out.writeShort(this.poolSize);
+			this.pool.writeTo(out);
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(objectClass);
+			out.writeShort(1);
+			out.writeShort(operatorClass);
+			out.writeShort(0);
+			out.writeShort(2);
+
+			// public <init>() { super(); }
+			out.writeShort(ACC_PUBLIC);
+			out.writeShort(init);
+			out.writeShort(initType);
+			writeCode(out, code, 1, 1, new byte[] {(byte) ALOAD_0, (byte) INVOKESPECIAL,
+					(byte) (objectInit >> 8), (byte) objectInit, (byte) RETURN});
+
+			// public double applyAsDouble(double x) { double p; ... }
+			// The stack holds at most four doubles: the running value, a coefficient, x,
+			// and an exponent; or the running value, a partial power, and p twice.
+			out.writeShort(ACC_PUBLIC);
+			out.writeShort(apply);
+			out.writeShort(applyType);
+			writeCode(out, code, 8, 5, body.toByteArray());
+
+			out.writeShort(0);
+			out.flush();
+			return bytes.toByteArray();
+		}
+
+		/**
+		 * Writes a method's attribute table, which holds only its {@code Code} attribute.
+		 * 
+		 * @param out the stream to write to.
+		 * @param code the constant pool index of the {@code Code} name.
+		 * @param maxStack the deepest the operand stack can get, in slots.
+		 * @param maxLocals the number of local variable slots.
+		 * @param instructions the bytecode of the method.
+		 * @throws IOException if the stream could not be written to.
+		 */
+		private static void writeCode(DataOutputStream out, int code, int maxStack,
+				int maxLocals, byte[] instructions) throws IOException {
+			out.writeShort(1);
+			out.writeShort(code);
+			out.writeInt(12 + instructions.length);
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(instructions.length);
+			out.write(instructions);
+			out.writeShort(0);
+			out.writeShort(0);
+		}
+
+		/**
+		 * Writes instructions that push {@code x} raised to a positive integer power on
+		 * to the operand stack, with the same multiplications, in the same order, as
+		 * {@code Polynomial.powInt}. The repeated squares of {@code x} are kept in the
+		 * local variable {@code p}.
+		 * 
+		 * @param ops the stream of instructions.
+		 * @param n the exponent, which must be positive.
+		 * @throws IOException if the stream could not be written to.
+		 */
+		private static void writePowInt(DataOutputStream ops, int n) throws IOException {
+			ops.writeByte(DLOAD_1);
+			ops.writeByte(DSTORE_3);
+			boolean first = true;
+			while (n > 0) {
+				if ((n & 1) != 0) {
+					// the first factor is multiplied by 1, which leaves it unchanged
+					ops.writeByte(DLOAD_3);
+					if (!first)
+						ops.writeByte(DMUL);
+					first = false;
+				}
+				n >>>= 1;
+				if (n > 0) {
+					ops.writeByte(DLOAD_3);
+					ops.writeByte(DUP2);
+					ops.writeByte(DMUL);
+					ops.writeByte(DSTORE_3);
+				}
+			}
+		}
+
+		/**
+		 * Writes an instruction that pushes the given constant on to the operand stack.
+		 * 
+		 * @param ops the stream of instructions.
+		 * @param value the constant to push.
+		 * @throws IOException if the stream could not be written to.
+		 */
+		private void loadDouble(DataOutputStream ops, double value) throws IOException {
+			ops.writeByte(LDC2_W);
+			ops.writeShort(this.addDouble(value));
+		}
+
+		/**
+		 * Adds a {@code double} constant to the pool, unless an identical one is already
+		 * in it. A {@code double} takes up two indices of the pool.
+		 * 
+		 * @param value the constant.
+		 * @return the index of the constant.
+		 * @throws IOException if the pool could not be written to.
+		 */
+		private int addDouble(double value) throws IOException {
+			Long bits = Double.doubleToRawLongBits(value);
+			Integer index = this.doubles.get(bits);
+			if (index != null)
+				return index;
+			DataOutputStream out = new DataOutputStream(this.pool);
+			out.writeByte(CONSTANT_DOUBLE);
+			out.writeLong(bits);
+			this.doubles.put(bits, this.poolSize);
+			this.poolSize += 2;
+			return this.poolSize - 2;
+		}
+
+		/**
+		 * Adds a {@code Utf8} entry to the pool.
+		 * 
+		 * @param text the text of the entry.
+		 * @return the index of the entry.
+		 * @throws IOException if the pool could not be written to.
+		 */
+		private int addUtf8(String text) throws IOException {
+			DataOutputStream out = new DataOutputStream(this.pool);
+			out.writeByte(CONSTANT_UTF8);
+			out.writeUTF(text);
+			return this.poolSize++;
+		}
+
+		/**
+		 * Adds a {@code Class} entry to the pool.
+		 * 
+		 * @param name the internal name of the class.
+		 * @return the index of the entry.
+		 * @throws IOException if the pool could not be written to.
+		 */
+		private int addClass(String name) throws IOException {
+			int nameIndex = this.addUtf8(name);
+			DataOutputStream out = new DataOutputStream(this.pool);
+			out.writeByte(CONSTANT_CLASS);
+			out.writeShort(nameIndex);
+			return this.poolSize++;
+		}
+
+		/**
+		 * Adds a {@code Methodref} entry, and the {@code NameAndType} entry that it refers
+		 * to, to the pool.
+		 * 
+		 * @param owner the pool index of the class that declares the method.
+		 * @param name the pool index of the name of the method.
+		 * @param type the pool index of the descriptor of the method.
+		 * @return the index of the {@code Methodref} entry.
+		 * @throws IOException if the pool could not be written to.
+		 */
+		private int addMethodref(int owner, int name, int type) throws IOException {
+			DataOutputStream out = new DataOutputStream(this.pool);
+			out.writeByte(CONSTANT_NAME_AND_TYPE);
+			out.writeShort(name);
+			out.writeShort(type);
+			int nameAndType = this.poolSize++;
+			out.writeByte(CONSTANT_METHODREF);
+			out.writeShort(owner);
+			out.writeShort(nameAndType);
+			return this.poolSize++;
+		}
+
+	}
+
+}
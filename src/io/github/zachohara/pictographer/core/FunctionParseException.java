@@ -0,0 +1,70 @@
+/* Copyright (C) 2015 Zach Ohara
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.zachohara.pictographer.core;
+
+/**
+ * A {@code FunctionParseException} is thrown when a string cannot be parsed as a
+ * polynomial function. It records the position in the string where parsing failed.
+ * 
+ * @author Zach Ohara
+ */
+public class FunctionParseException extends IllegalArgumentException {
+
+	/**
+	 * The index of the character in the input where parsing failed.
+	 */
+	private final int position;
+
+	/**
+	 * The input that could not be parsed.
+	 */
+	private final String input;
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructs a new {@code FunctionParseException}.
+	 * 
+	 * @param message a description of what was expected.
+	 * @param input the input that could not be parsed.
+	 * @param position the index of the character in the input where parsing failed.
+	 */
+	public FunctionParseException(String message, String input, int position) {
+		super(message + " at position " + position);
+		this.input = input;
+		this.position = position;
+	}
+
+	/**
+	 * Gets the index of the character in the input where parsing failed.
+	 * 
+	 * @return the position of the error.
+	 */
+	public int getPosition() {
+		return this.position;
+	}
+
+	/**
+	 * Gets the input that could not be parsed.
+	 * 
+	 * @return the input string.
+	 */
+	public String getInput() {
+		return this.input;
+	}
+
+}
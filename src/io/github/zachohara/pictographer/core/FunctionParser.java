@@ -24,6 +24,18 @@ import javax.swing.JOptionPane;
 /**
  * The {@code FunctionParser} class contains static methods for converting a String into
  * a {@code Polynomial} that values can be easily calculated from.
+ * <p>
+ * The input is read in a single pass, one character at a time. A function is a sequence
+ * of terms separated by {@code +} or {@code -}, where each term is an optional
+ * coefficient followed by an optional {@code x}, which may be raised to a power with
+ * {@code ^}. Coefficients and exponents may be integers, decimals, or fractions such as
+ * {@code 1/2}, and may be wrapped in parentheses. Whitespace between symbols is ignored.
+ * <p>
+ * Whitespace is not allowed inside a number, so {@code "1 2"} is rejected. Earlier
+ * versions removed all whitespace before parsing, and read it as {@code 12}. Those
+ * versions also split terms and removed whitespace with the public
+ * {@code TERM_DELIMITERS} and {@code WHITESPACE_CHARS} tables. The lexer now decides
+ * both, so the tables were removed.
  * 
  * @author Zach Ohara
  */
@@ -35,161 +47,410 @@ public final class FunctionParser {
 	private FunctionParser() {
 		
 	}
-	
+
+	/**
+	 * The character that represents the variable.
+	 */
+	public static final char VARIABLE = 'x';
+
+	/**
+	 * The character that separates functions, when more than one function is entered in
+	 * a single string.
+	 */
+	public static final char FUNCTION_SEPARATOR = ';';
+
+	/**
+	 * The character returned by {@link Lexer#peek()} when there is no more input.
+	 */
+	private static final char END_OF_INPUT = '\0';
+
 	/**
-	 * The set of symbols that will always separate different terms.
+	 * The largest number of significant digits in a number that can be converted
+	 * exactly without calling {@code Double.parseDouble}.
 	 */
-	public static final String[] TERM_DELIMITERS = {"+", "-"};
+	private static final int MAX_EXACT_DIGITS = 15;
 
 	/**
-	 * The set of symbols that will be counted as whitespace, and removed.
+	 * The powers of ten that are exactly representable as doubles.
 	 */
-	public static final String[] WHITESPACE_CHARS = {" ", "\t", "\n"};
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
 
+	/**
+	 * Splits an input string that may hold several functions, separated by
+	 * {@value #FUNCTION_SEPARATOR}, into the string of each function. Blank functions
+	 * are left out.
+	 * 
+	 * @param input the string of the functions.
+	 * @return the string of each function, in order.
+	 */
+	public static List<String> splitFunctions(String input) {
+		List<String> functions = new ArrayList<String>();
+		int start = 0;
+		while (start <= input.length()) {
+			int end = input.indexOf(FUNCTION_SEPARATOR, start);
+			if (end < 0)
+				end = input.length();
+			String function = input.substring(start, end).trim();
+			if (function.length() > 0)
+				functions.add(function);
+			start = end + 1;
+		}
+		return functions;
+	}
+
+	/**
+	 * Removes the whitespace from a function string that this parser ignores, so that
+	 * strings that differ only in that whitespace can share an entry in a cache. Two
+	 * strings with the same normal form are parsed into the same function, or are both
+	 * rejected. Whitespace between two characters that could belong to the same number,
+	 * such as in {@code "x^1 2"}, is not ignored by the parser, so it is kept as a single
+	 * space.
+	 * 
+	 * @param function the string of the function.
+	 * @return the normal form of the string.
+	 */
+	public static String normalizeFunction(String function) {
+		StringBuilder normalized = new StringBuilder(function.length());
+		boolean spaced = false;
+		for (int i = 0; i < function.length(); i++) {
+			char c = function.charAt(i);
+			if (isWhitespace(c)) {
+				spaced = true;
+				continue;
+			}
+			if (spaced && normalized.length() > 0 && isNumberSymbol(c)
+					&& isNumberSymbol(normalized.charAt(normalized.length() - 1)))
+				normalized.append(' ');
+			spaced = false;
+			normalized.append(c);
+		}
+		return normalized.toString();
+	}
+
+	/**
+	 * Writes a polynomial with the given coefficients as a string that this parser
+	 * reads back as the same function, with the highest power first. Each coefficient is
+	 * written with as many digits as it needs to be read back exactly.
+	 * 
+	 * @param coefficients the coefficient of each power of {@code x}, from the constant
+	 * term up.
+	 * @return the string of the function, which is {@code "0"} if every coefficient is
+	 * zero.
+	 */
+	public static String formatPolynomial(double[] coefficients) {
+		StringBuilder result = new StringBuilder();
+		for (int power = coefficients.length - 1; power >= 0; power--) {
+			double coefficient = coefficients[power];
+			if (coefficient == 0)
+				continue;
+			if (result.length() > 0)
+				result.append((coefficient < 0) ? " - " : " + ");
+			else if (coefficient < 0)
+				result.append('-');
+			result.append(Math.abs(coefficient));
+			if (power > 0)
+				result.append(VARIABLE);
+			if (power > 1)
+				result.append('^').append(power);
+		}
+		return (result.length() > 0) ? result.toString() : "0";
+	}
 
 	/**
 	 * Parses an input string and returns a {@code Polynomial} that represents the same
-	 * mathematical function as the string.
+	 * mathematical function as the string. An empty string is parsed as a polynomial
+	 * with no terms.
 	 * 
 	 * @param input the String of the function.
 	 * @return the {@code Polynomial} function.
+	 * @throws FunctionParseException if the input is not a valid polynomial function.
 	 */
-	public static Polynomial parsePolynomialFunction(String input) {
-		input = removeWhitespace(input);
-		List<String> termStrings = new ArrayList<String>();
-		int i = 0;
-		while (i < input.length()) {
-			int lastI = i;
-			while (i < input.length() && !charIsDelimiter(input.substring(i, i+1))) {
-				i++;
-			}
-			termStrings.add(input.substring(Math.max(0, lastI - 1), i));
-			i++;
-		}
-		Polynomial function = new Polynomial();
-		for (String term : termStrings) {
-			try {
-				parseTerm(function, term);
-			} catch (NumberFormatException e) {
-				// TODO: warn invalid term
-				e.printStackTrace();
+	public static Polynomial parsePolynomialFunction(String input)
+			throws FunctionParseException {
+		RenderMetrics.StageEvent start = RenderMetrics.start();
+		try {
+			Lexer lexer = new Lexer(input);
+			Polynomial function = new Polynomial();
+			boolean first = true;
+			while (lexer.peek() != END_OF_INPUT) {
+				parseTerm(lexer, function, first);
+				first = false;
 			}
+			return function.compile();
+		} finally {
+			RenderMetrics.end(RenderMetrics.Stage.PARSE, start, input.length());
 		}
-		return function;
 	}
 
 	/**
-	 * Parses a given term for a coefficient and exponent, and then adds the converted
-	 * polynomial to the given {@code Polynomial}.
+	 * Parses the next term from the input for a coefficient and exponent, and then adds
+	 * the converted term to the given {@code Polynomial}. Every term except the first
+	 * must start with a sign.
 	 * 
+	 * @param lexer the lexer to read the term from.
 	 * @param addTo the {@code Polynomial} to add the parsed term to.
-	 * @param term the term that should be parsed.
-	 */
-	private static void parseTerm(Polynomial addTo, String term) {
-		if (term.length() == 0)
-			return;
-		int signum = 1;
-		if (term.startsWith("-"))
-			signum = -1;
-		if (charIsDelimiter(term.substring(0, 1)))
-			term = term.substring(1);
-		double coeff;
-		double exp;
-		if (term.indexOf("x") == -1) {
-			coeff = parseFraction(term);
-			exp = 0;
-		} else {
-			if (term.indexOf("x") == 0)
-				coeff = 1;
-			else
-				coeff = parseFraction(term.substring(0, term.indexOf("x")));
-			if (term.indexOf("^") == -1)
-				exp = 1;
-			else
-				exp = parseFraction(term.substring(term.indexOf("^") + 1));
+	 * @param first whether this is the first term of the function.
+	 * @throws FunctionParseException if the next term is not valid.
+	 */
+	private static void parseTerm(Lexer lexer, Polynomial addTo, boolean first)
+			throws FunctionParseException {
+		char next = lexer.peek();
+		if (!first && next != '+' && next != '-')
+			throw lexer.error("Expected + or -");
+		double signum = lexer.parseSigns();
+		double coeff = 1;
+		double exp = 0;
+		if (lexer.peek() != VARIABLE)
+			coeff = lexer.parseFraction();
+		if (lexer.peek() == VARIABLE) {
+			lexer.advance();
+			exp = 1;
+			if (lexer.peek() == '^') {
+				lexer.advance();
+				exp = lexer.parseSigns() * lexer.parseFraction();
+			}
 		}
 		addTo.addTerm(signum * coeff, exp);
 	}
 
 	/**
-	 * Parses the given string representing a fraction, a decimal, or an integer, and
-	 * returns a double with the value of the fraction.
+	 * Determines if the given character is a whitespace character.
 	 * 
-	 * @param fraction the string to parse as a fraction.
-	 * @return the double value of the fraction.
-	 */
-	private static double parseFraction(String fraction) {
-		if (fraction.startsWith("(") && fraction.endsWith(")"))
-			fraction = fraction.substring(1, fraction.length() - 1);
-		if (fraction.indexOf("(") != -1 || fraction.indexOf(")") != -1)
-			throw new NumberFormatException();
-		int slash = fraction.indexOf("/");
-		if (slash == -1) {
-			return Double.parseDouble(fraction);
-		} else {
-			double num = Double.parseDouble(fraction.substring(0, slash));
-			double den = Double.parseDouble(fraction.substring(slash + 1));
-			return num / den;
-		}
+	 * @param c the character to check.
+	 * @return {@code true} if the given character is whitespace; {@code false}
+	 * otherwise.
+	 */
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
 	}
 
 	/**
-	 * Determines if the given (single-character) string is a character that separates
-	 * different terms.
+	 * Determines if the given character can be read as part of a number, without any
+	 * whitespace being skipped: a digit, a decimal point, or the {@code e} and sign of
+	 * an exponent.
 	 * 
-	 * @param s the string to search for a term delimiter in.
-	 * @return {@code true} if the given string is a term delimiter; {@code false}
+	 * @param c the character to check.
+	 * @return {@code true} if the given character can be part of a number; {@code false}
 	 * otherwise.
 	 */
-	private static boolean charIsDelimiter(String s) {
-		for (String delimiter : TERM_DELIMITERS) {
-			if (s.equals(delimiter))
-				return true;
-		}
-		return false;
+	private static boolean isNumberSymbol(char c) {
+		return isDigit(c) || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-';
 	}
 
 	/**
-	 * Removes all the whitespace characters from the given string, and returns the
-	 * whitespace-less version.
+	 * Determines if the given character is a decimal digit.
 	 * 
-	 * @param s the string to remove whitespace characters from.
-	 * @return the string with all whitespace removed.
-	 */
-	private static String removeWhitespace(String s) {
-		int i = 0;
-		while (i < s.length()) {
-			if (charIsWhitespace(s.substring(i, i+1)))
-				s = s.substring(0, i) + s.substring(i+1);
-			else
-				i++;
-		}
-		return s;
+	 * @param c the character to check.
+	 * @return {@code true} if the given character is a digit; {@code false} otherwise.
+	 */
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
 	}
 
 	/**
-	 * Determines if the given (single-character) string is a whitespace character.
+	 * Warns the user that a function could not be parsed, and where.
 	 * 
-	 * @param s the string to look for whitespace in.
-	 * @return {@code true} if the given string is a whitespace character; {@code false}
-	 * otherwise.
+	 * @param e the exception that was thrown while parsing the function.
 	 */
-	private static boolean charIsWhitespace(String s) {
-		for (String whitespace : WHITESPACE_CHARS) {
-			if (s.equals(whitespace))
-				return true;
-		}
-		return false;
+	public static void warnParseError(FunctionParseException e) {
+		JOptionPane.showMessageDialog(null, "\"" + e.getInput() + "\" is not a valid "
+				+ "polynomial function:\n" + e.getMessage(), "Warning",
+				JOptionPane.WARNING_MESSAGE);
 	}
 
 	/**
-	 * Warns the user that a given term is not a valid term.
-	 * 
-	 * @param term the term that could not be parsed.
+	 * A {@code Lexer} reads the symbols of a function string one character at a time,
+	 * without copying any part of the string.
 	 */
-	public static void warnIllegalTerm(String term) {
-		JOptionPane.showMessageDialog(null, "\"" + term + "\" is not a valid polynomial term",
-				"Warning", JOptionPane.WARNING_MESSAGE);
+	private static class Lexer {
+
+		/**
+		 * The string being read.
+		 */
+		private final String input;
+
+		/**
+		 * The index of the next character to read.
+		 */
+		private int position;
+
+		/**
+		 * Constructs a new {@code Lexer} at the start of the given string.
+		 * 
+		 * @param input the string to read.
+		 */
+		public Lexer(String input) {
+			this.input = input;
+			this.position = 0;
+		}
+
+		/**
+		 * Skips any whitespace, and returns the next character without reading it.
+		 * 
+		 * @return the next character, or {@link #END_OF_INPUT} if there is none.
+		 */
+		public char peek() {
+			while (this.position < this.input.length()
+					&& isWhitespace(this.input.charAt(this.position))) {
+				this.position++;
+			}
+			if (this.position == this.input.length())
+				return END_OF_INPUT;
+			return this.input.charAt(this.position);
+		}
+
+		/**
+		 * Reads the next character.
+		 */
+		public void advance() {
+			this.position++;
+		}
+
+		/**
+		 * Reads any number of {@code +} and {@code -} signs, and returns the sign that
+		 * they combine to.
+		 * 
+		 * @return {@code -1} if an odd number of {@code -} signs were read; {@code 1}
+		 * otherwise.
+		 */
+		public double parseSigns() {
+			double signum = 1;
+			for (char c = this.peek(); c == '+' || c == '-'; c = this.peek()) {
+				if (c == '-')
+					signum = -signum;
+				this.advance();
+			}
+			return signum;
+		}
+
+		/**
+		 * Reads a fraction, a decimal, or an integer, which may be wrapped in
+		 * parentheses. Inside parentheses, the numerator and denominator may be signed.
+		 * 
+		 * @return the value of the fraction.
+		 * @throws FunctionParseException if the next symbols are not a fraction.
+		 */
+		public double parseFraction() throws FunctionParseException {
+			boolean parenthesized = this.peek() == '(';
+			if (parenthesized)
+				this.advance();
+			double value = (parenthesized ? this.parseSigns() : 1) * this.parseNumber();
+			if (this.peek() == '/') {
+				this.advance();
+				value /= (parenthesized ? this.parseSigns() : 1) * this.parseNumber();
+			}
+			if (parenthesized) {
+				if (this.peek() != ')')
+					throw this.error("Expected )");
+				this.advance();
+			}
+			return value;
+		}
+
+		/**
+		 * Reads an unsigned decimal number, with an optional exponent such as
+		 * {@code e-3}. Numbers with few enough digits are converted directly from their
+		 * digits; any others are converted with {@code Double.parseDouble}.
+		 * 
+		 * @return the value of the number.
+		 * @throws FunctionParseException if the next symbol is not a number.
+		 */
+		public double parseNumber() throws FunctionParseException {
+			this.peek();
+			int start = this.position;
+			long mantissa = 0;
+			int digits = 0;
+			int significantDigits = 0;
+			int scale = 0;
+			boolean afterPoint = false;
+			while (this.position < this.input.length()) {
+				char c = this.input.charAt(this.position);
+				if (isDigit(c)) {
+					digits++;
+					if (significantDigits > 0 || c != '0')
+						significantDigits++;
+					if (significantDigits <= MAX_EXACT_DIGITS)
+						mantissa = mantissa * 10 + (c - '0');
+					else if (!afterPoint)
+						scale++;
+					if (afterPoint && significantDigits <= MAX_EXACT_DIGITS)
+						scale--;
+				} else if (c == '.' && !afterPoint) {
+					afterPoint = true;
+				} else {
+					break;
+				}
+				this.position++;
+			}
+			if (digits == 0)
+				throw this.error("Expected a number", start);
+			if (this.position < this.input.length()
+					&& (this.input.charAt(this.position) == 'e'
+							|| this.input.charAt(this.position) == 'E')) {
+				scale += this.parseExponent();
+			}
+			if (significantDigits > MAX_EXACT_DIGITS
+					|| Math.abs(scale) >= POWERS_OF_TEN.length)
+				return Double.parseDouble(this.input.substring(start, this.position));
+			if (scale < 0)
+				return mantissa / POWERS_OF_TEN[-scale];
+			return mantissa * POWERS_OF_TEN[scale];
+		}
+
+		/**
+		 * Reads the exponent of a number in scientific notation, starting at the
+		 * {@code e}.
+		 * 
+		 * @return the value of the exponent.
+		 * @throws FunctionParseException if the {@code e} is not followed by an integer.
+		 */
+		private int parseExponent() throws FunctionParseException {
+			this.position++;
+			int signum = 1;
+			if (this.position < this.input.length()
+					&& (this.input.charAt(this.position) == '+'
+							|| this.input.charAt(this.position) == '-')) {
+				if (this.input.charAt(this.position) == '-')
+					signum = -1;
+				this.position++;
+			}
+			int start = this.position;
+			int exponent = 0;
+			while (this.position < this.input.length()
+					&& isDigit(this.input.charAt(this.position))) {
+				exponent = Math.min(100000, exponent * 10
+						+ (this.input.charAt(this.position) - '0'));
+				this.position++;
+			}
+			if (this.position == start)
+				throw this.error("Expected an exponent");
+			return signum * exponent;
+		}
+
+		/**
+		 * Creates an exception for an error at the current position.
+		 * 
+		 * @param message a description of what was expected.
+		 * @return the exception.
+		 */
+		public FunctionParseException error(String message) {
+			return this.error(message, this.position);
+		}
+
+		/**
+		 * Creates an exception for an error at the given position.
+		 * 
+		 * @param message a description of what was expected.
+		 * @param position the index of the character where the error is.
+		 * @return the exception.
+		 */
+		public FunctionParseException error(String message, int position) {
+			return new FunctionParseException(message, this.input, position);
+		}
+
 	}
 
 }
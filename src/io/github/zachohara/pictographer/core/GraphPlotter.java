@@ -0,0 +1,859 @@
+/* Copyright (C) 2015 Zach Ohara
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.zachohara.pictographer.core;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A {@code GraphPlotter} converts one or more {@code Polynomial}s into the pixel
+ * coordinates of the polylines that draw their graphs on an image of a given size. It
+ * does not depend on any window, so it can be used both for the graph on the screen
+ * and for rendering images without a display.
+ * <p>
+ * A plotter reuses its buffers, and the samples of the last graph, between calls to
+ * {@link #plot(Polynomial, double[], double[], int, int)}, so it should only be used by
+ * one thread at a time. Samples are cached by the identity of the polynomial, so a
+ * polynomial should not have terms added to it once it has been plotted.
+ * 
+ * @author Zach Ohara
+ */
+public class GraphPlotter {
+
+	/**
+	 * The samplers of the tiles that were sampled most recently, by function and then
+	 * by tile number. Tile {@code n} covers x-coordinates from {@code n * tileSpan} to
+	 * {@code (n + 1) * tileSpan}, so the same tile is sampled at the same x-coordinates
+	 * no matter how the graph is panned. Each sampler keeps the tolerance and culling
+	 * range that its tile was sampled with, so that the tile can be refined on its own
+	 * when the graph is zoomed or panned in y.
+	 */
+	private final Map<Polynomial, Map<Long, AdaptiveSampler>> tiles;
+
+	/**
+	 * Samplers that are not holding a tile, and can be reused for new tiles.
+	 */
+	private final Deque<AdaptiveSampler> spareSamplers;
+
+	/**
+	 * The width, in x, of the cached tiles.
+	 */
+	private double cachedTileSpan;
+
+	/**
+	 * Whether polynomials are evaluated with compensated arithmetic.
+	 */
+	private boolean compensated;
+
+	/**
+	 * The pixel x-coordinates of the plotted points.
+	 */
+	private int[] xPixels;
+
+	/**
+	 * The pixel y-coordinates of the plotted points.
+	 */
+	private int[] yPixels;
+
+	/**
+	 * The number of plotted points.
+	 */
+	private int pointCount;
+
+	/**
+	 * The index of the first point of each polyline.
+	 */
+	private int[] polylineStarts;
+
+	/**
+	 * The number of polylines.
+	 */
+	private int polylineCount;
+
+	/**
+	 * The index of the first polyline of each function's curve.
+	 */
+	private int[] curveStarts;
+
+	/**
+	 * The number of curves; one for each function that was plotted.
+	 */
+	private int curveCount;
+
+
+	/**
+	 * The system property that makes new plotters evaluate polynomials with compensated
+	 * arithmetic when it is {@code true}.
+	 */
+	public static final String COMPENSATED_PROPERTY = "pictographer.compensated";
+
+	/**
+	 * The thickness of the lines that should be drawn.
+	 */
+	public static final int LINE_THICKNESS = 5;
+
+	/**
+	 * The color of the lines of the first curve.
+	 */
+	public static final Color LINE_COLOR = Color.BLUE;
+
+	/**
+	 * The colors of the curves, in order. If there are more curves than colors, the
+	 * colors are used again from the start.
+	 */
+	private static final Color[] LINE_COLORS = {LINE_COLOR, Color.RED,
+			new Color(0, 160, 0), Color.MAGENTA, Color.ORANGE, Color.CYAN.darker(),
+			Color.BLACK, new Color(128, 0, 255)};
+
+	/**
+	 * The number of pixel columns in a tile. Each tile is sampled by its own
+	 * {@code AdaptiveSampler}, and can be reused when the graph is panned.
+	 */
+	private static final int TILE_COLUMNS = 64;
+
+	/**
+	 * The number of tiles that are sampled together by a single task. Each group of
+	 * tiles can be sampled in parallel.
+	 */
+	private static final int TILES_PER_TASK = 32;
+
+	/**
+	 * The largest tile number that can be used. Beyond this, tile numbers cannot be
+	 * converted exactly to x-coordinates, so no graph is plotted.
+	 */
+	private static final double MAX_TILE_NUMBER = 1L << 52;
+
+	/**
+	 * The width, in pixels, of the evenly spaced segments that the adaptive sampling
+	 * starts from.
+	 */
+	private static final int INITIAL_SEGMENT_WIDTH = 16;
+
+	/**
+	 * The largest distance, in pixels, that a line segment may stray from the curve.
+	 */
+	private static final double SAMPLE_TOLERANCE = 0.5;
+
+	/**
+	 * The width, in pixels, of the shortest line segment that will be split any
+	 * further.
+	 */
+	private static final double MIN_SEGMENT_WIDTH = 0.125;
+
+	/**
+	 * The farthest distance, in pixels, above or below the image that a point will be
+	 * placed. Points beyond this are moved to this distance, so that their pixel
+	 * coordinates cannot overflow.
+	 */
+	private static final int PIXEL_LIMIT = 1 << 16;
+
+	/**
+	 * The number of graph heights, above and below the graph, in which curves are
+	 * still sampled in full. The graph can be panned this far in y, or zoomed out in y
+	 * by up to twice this plus one times, before the cached tiles must be refined.
+	 */
+	private static final double CULLING_MARGIN = 1;
+
+	/**
+	 * Constructs a new {@code GraphPlotter} with no points.
+	 */
+	public GraphPlotter() {
+		this.tiles = new IdentityHashMap<Polynomial, Map<Long, AdaptiveSampler>>();
+		this.spareSamplers = new ArrayDeque<AdaptiveSampler>();
+		this.cachedTileSpan = Double.NaN;
+		this.compensated = Boolean.getBoolean(COMPENSATED_PROPERTY);
+		this.xPixels = new int[0];
+		this.yPixels = new int[0];
+		this.polylineStarts = new int[0];
+		this.curveStarts = new int[0];
+		this.pointCount = 0;
+		this.polylineCount = 0;
+		this.curveCount = 0;
+	}
+
+	/**
+	 * Plots a graph of the given polynomial function on an image of the given size,
+	 * replacing any points that were plotted before.
+	 * 
+	 * @param function the polynomial function to graph.
+	 * @param xRange the x-boundaries of the graph.
+	 * @param yRange the y-boundaries of the graph.
+	 * @param width the width of the image, in pixels.
+	 * @param height the height of the image, in pixels.
+	 */
+	public void plot(Polynomial function, double[] xRange, double[] yRange, int width,
+			int height) {
+		this.plot(Collections.singletonList(function), xRange, yRange, width, height, null);
+	}
+
+	/**
+	 * Plots a graph of the given polynomial function on an image of the given size,
+	 * replacing any points that were plotted before. Plotting stops early if the given
+	 * condition becomes {@code true}, in which case no points are left in this plotter.
+	 * 
+	 * @param function the polynomial function to graph.
+	 * @param xRange the x-boundaries of the graph.
+	 * @param yRange the y-boundaries of the graph.
+	 * @param width the width of the image, in pixels.
+	 * @param height the height of the image, in pixels.
+	 * @param cancelled the condition for stopping early, or {@code null} to always plot
+	 * the whole graph.
+	 * @return {@code true} if the whole graph was plotted; {@code false} if plotting
+	 * was cancelled.
+	 */
+	public boolean plot(Polynomial function, double[] xRange, double[] yRange, int width,
+			int height, BooleanSupplier cancelled) {
+		return this.plot(Collections.singletonList(function), xRange, yRange, width, height,
+				cancelled);
+	}
+
+	/**
+	 * Plots the graphs of several polynomial functions on an image of the given size,
+	 * replacing any points that were plotted before. Each function becomes one curve,
+	 * in the same order as the list. Plotting stops early if the given condition becomes
+	 * {@code true}, in which case no points are left in this plotter.
+	 * <p>
+	 * Every function is sampled in one shared pass over the tiles of the graph: each
+	 * task samples all of the functions over the same stretch of x-coordinates before
+	 * moving on. The samples of the last graph are kept for each function, and reused as
+	 * far as possible. They are kept by x-coordinate, so a change to the y-boundaries
+	 * only converts the same samples to different pixels. If the graph has been zoomed in
+	 * y far enough to need a tighter tolerance, or panned or zoomed out in y beyond the
+	 * range that a tile was sampled for, that tile is refined: only the segments that no
+	 * longer follow the curve closely enough are split. If the graph has been panned in x
+	 * without zooming, only the tiles that have come into view are sampled; and if one
+	 * function has changed, only that function is sampled again. Zooming in x samples
+	 * every tile again.
+	 * <p>
+	 * Parts of a curve that are far above or below the graph are not sampled finely,
+	 * and runs of points that are all on one side outside of the graph are cut down to
+	 * their first and last points, so they never reach the painter.
+	 * 
+	 * @param functions the polynomial functions to graph.
+	 * @param xRange the x-boundaries of the graph.
+	 * @param yRange the y-boundaries of the graph.
+	 * @param width the width of the image, in pixels.
+	 * @param height the height of the image, in pixels.
+	 * @param cancelled the condition for stopping early, or {@code null} to always plot
+	 * the whole graph.
+	 * @return {@code true} if the whole graph was plotted; {@code false} if plotting
+	 * was cancelled.
+	 */
+	public boolean plot(List<Polynomial> functions, double[] xRange, double[] yRange,
+			int width, int height, BooleanSupplier cancelled) {
+		RenderMetrics.StageEvent start = RenderMetrics.start();
+		this.pointCount = 0;
+		this.polylineCount = 0;
+		this.curveCount = 0;
+		width = Math.max(0, width);
+		double xMin = Math.min(xRange[0], xRange[1]);
+		double xMax = Math.max(xRange[0], xRange[1]);
+		double tileSpan = (xMax - xMin) * TILE_COLUMNS / width;
+		if (!(tileSpan > 0 && tileSpan < Double.POSITIVE_INFINITY)
+				|| !(Math.abs(xMin / tileSpan) < MAX_TILE_NUMBER
+				&& Math.abs(xMax / tileSpan) < MAX_TILE_NUMBER))
+			return true;
+		double yTolerance = Math.abs(yRange[1] - yRange[0]) * SAMPLE_TOLERANCE / height;
+		double minStep = tileSpan * MIN_SEGMENT_WIDTH / TILE_COLUMNS;
+		double yMin = Math.min(yRange[0], yRange[1]);
+		double yMax = Math.max(yRange[0], yRange[1]);
+		double cullMin = yMin - (yMax - yMin) * CULLING_MARGIN;
+		double cullMax = yMax + (yMax - yMin) * CULLING_MARGIN;
+		if (tileSpan != this.cachedTileSpan) {
+			this.clearCache();
+			this.cachedTileSpan = tileSpan;
+		}
+
+		long firstTile = (long)(Math.floor(xMin / tileSpan));
+		int tileCount = (int)((long)(Math.ceil(xMax / tileSpan)) - firstTile);
+		this.evictTiles(functions, firstTile, tileCount);
+		int curves = functions.size();
+		AdaptiveSampler[][] visible = new AdaptiveSampler[curves][];
+		int jobCapacity = tileCount * curves;
+		AdaptiveSampler[] jobSamplers = new AdaptiveSampler[jobCapacity];
+		Polynomial[] jobFunctions = new Polynomial[jobCapacity];
+		long[] jobTiles = new long[jobCapacity];
+		double[] jobTolerances = new double[jobCapacity];
+		boolean[] jobRefines = new boolean[jobCapacity];
+		int jobs = 0;
+		for (int i = 0; i < tileCount; i++) {
+			for (int c = 0; c < curves; c++) {
+				Polynomial function = functions.get(c);
+				Map<Long, AdaptiveSampler> functionTiles = this.tiles.get(function);
+				if (functionTiles == null) {
+					functionTiles = new HashMap<Long, AdaptiveSampler>();
+					this.tiles.put(function, functionTiles);
+				}
+				if (visible[c] == null) {
+					int first = functions.indexOf(function);
+					visible[c] = (first < c) ? visible[first] : new AdaptiveSampler[tileCount];
+				}
+				if (visible[c][i] != null)
+					continue;
+				AdaptiveSampler sampler = functionTiles.get(firstTile + i);
+				boolean refine = sampler != null;
+				if (sampler == null) {
+					sampler = this.takeSpareSampler();
+					sampler.setCompensated(this.compensated);
+					sampler.setCullingRange(cullMin, cullMax);
+				} else if (sampler.getTolerance() > yTolerance) {
+					sampler.setCullingRange(cullMin, cullMax);
+				} else if (sampler.getCullMin() > yMin || sampler.getCullMax() < yMax) {
+					sampler.setCullingRange(Math.min(cullMin, sampler.getCullMin()),
+							Math.max(cullMax, sampler.getCullMax()));
+				} else {
+					visible[c][i] = sampler;
+					continue;
+				}
+				jobSamplers[jobs] = sampler;
+				jobFunctions[jobs] = function;
+				jobTiles[jobs] = firstTile + i;
+				jobTolerances[jobs] = yTolerance;
+				jobRefines[jobs] = refine;
+				jobs++;
+				visible[c][i] = sampler;
+			}
+		}
+		boolean[] finished = new boolean[jobs];
+		ForkJoinPool.commonPool().invoke(new TileTask(jobSamplers, jobFunctions, jobTiles,
+				jobTolerances, jobRefines, finished, tileSpan, minStep, cancelled, 0, jobs));
+		long samples = 0;
+		for (int j = 0; j < jobs; j++) {
+			samples += jobSamplers[j].getEvaluationCount();
+			if (finished[j]) {
+				this.tiles.get(jobFunctions[j]).put(jobTiles[j], jobSamplers[j]);
+			} else {
+				this.tiles.get(jobFunctions[j]).remove(jobTiles[j]);
+				this.spareSamplers.push(jobSamplers[j]);
+			}
+		}
+		RenderMetrics.count(RenderMetrics.Counter.SAMPLES, samples);
+		if (cancelled != null && cancelled.getAsBoolean())
+			return false;
+		this.collectSamples(visible, xRange, yRange, width, height);
+		RenderMetrics.end(RenderMetrics.Stage.EVALUATE, start, samples);
+		return true;
+	}
+
+	/**
+	 * Determines if this plotter evaluates polynomials with compensated arithmetic.
+	 * 
+	 * @return {@code true} if polynomials are evaluated with
+	 * {@link Polynomial#compensatedValueAt(double)}; {@code false} otherwise.
+	 */
+	public boolean isCompensated() {
+		return this.compensated;
+	}
+
+	/**
+	 * Sets whether this plotter evaluates polynomials with compensated arithmetic. This
+	 * keeps high-degree graphs smooth far from the origin, where ordinary arithmetic
+	 * loses most of its precision, but makes sampling a few times slower. Changing the
+	 * setting discards every cached tile. The default is taken from the system property
+	 * {@value #COMPENSATED_PROPERTY}.
+	 * 
+	 * @param compensated whether polynomials should be evaluated with
+	 * {@link Polynomial#compensatedValueAt(double)}.
+	 */
+	public void setCompensated(boolean compensated) {
+		if (compensated != this.compensated)
+			this.clearCache();
+		this.compensated = compensated;
+	}
+
+	/**
+	 * Discards every cached tile, so that the next graph is sampled from scratch.
+	 */
+	public void clearCache() {
+		for (Map<Long, AdaptiveSampler> functionTiles : this.tiles.values()) {
+			this.spareSamplers.addAll(functionTiles.values());
+		}
+		this.tiles.clear();
+	}
+
+	/**
+	 * Discards the cached tiles of functions that are not in the given list, and the
+	 * cached tiles that are outside the given run of tiles.
+	 * 
+	 * @param functions the functions whose tiles should be kept.
+	 * @param firstTile the number of the first tile to keep.
+	 * @param tileCount the number of tiles to keep.
+	 */
+	private void evictTiles(List<Polynomial> functions, long firstTile, int tileCount) {
+		Iterator<Map.Entry<Polynomial, Map<Long, AdaptiveSampler>>> cached =
+				this.tiles.entrySet().iterator();
+		while (cached.hasNext()) {
+			Map.Entry<Polynomial, Map<Long, AdaptiveSampler>> function = cached.next();
+			boolean plotted = false;
+			for (Polynomial p : functions) {
+				plotted |= (p == function.getKey());
+			}
+			Iterator<Map.Entry<Long, AdaptiveSampler>> entries =
+					function.getValue().entrySet().iterator();
+			while (entries.hasNext()) {
+				Map.Entry<Long, AdaptiveSampler> entry = entries.next();
+				long tile = entry.getKey();
+				if (!plotted || tile < firstTile || tile >= firstTile + tileCount) {
+					this.spareSamplers.push(entry.getValue());
+					entries.remove();
+				}
+			}
+			if (!plotted)
+				cached.remove();
+		}
+	}
+
+	/**
+	 * Gets a sampler that is not holding a tile, creating a new one if there are none.
+	 * 
+	 * @return a sampler for a new tile.
+	 */
+	private AdaptiveSampler takeSpareSampler() {
+		AdaptiveSampler sampler = this.spareSamplers.poll();
+		return (sampler != null) ? sampler : new AdaptiveSampler();
+	}
+
+	/**
+	 * Converts the points of the given tiles into pixel coordinates, one curve after
+	 * another. A point is left out if it and both of its neighbours in its polyline are
+	 * all above, or all below, the graph; the line between its neighbours is then just
+	 * as far out of sight.
+	 * 
+	 * @param visible the samplers of the tiles of each curve, in order of increasing x.
+	 * @param xRange the x-boundaries of the graph.
+	 * @param yRange the y-boundaries of the graph.
+	 * @param width the width of the image, in pixels.
+	 * @param height the height of the image, in pixels.
+	 */
+	private void collectSamples(AdaptiveSampler[][] visible, double[] xRange,
+			double[] yRange, int width, int height) {
+		int points = 0;
+		int polylines = 0;
+		for (AdaptiveSampler[] curve : visible) {
+			for (AdaptiveSampler sampler : curve) {
+				points += sampler.getPointCount();
+				polylines += sampler.getPolylineCount();
+			}
+		}
+		this.ensurePointCapacity(points, polylines, visible.length);
+		double[] imageWidth = {0, width};
+		double[] imageHeight = {0, height};
+		double yMin = Math.min(yRange[0], yRange[1]);
+		double yMax = Math.max(yRange[0], yRange[1]);
+		int point = 0;
+		int polyline = 0;
+		for (int c = 0; c < visible.length; c++) {
+			this.curveStarts[c] = polyline;
+			for (AdaptiveSampler sampler : visible[c]) {
+				double[] xValues = sampler.getXValues();
+				double[] yValues = sampler.getYValues();
+				int[] starts = sampler.getPolylineStarts();
+				for (int j = 0; j < sampler.getPolylineCount(); j++) {
+					this.polylineStarts[polyline++] = point;
+					int first = starts[j];
+					int last = (j + 1 < sampler.getPolylineCount()) ? starts[j + 1] - 1
+							: sampler.getPointCount() - 1;
+					for (int k = first; k <= last; k++) {
+						int side = sideOf(yValues[k], yMin, yMax);
+						if (side != 0 && k > first && k < last
+								&& sideOf(yValues[k - 1], yMin, yMax) == side
+								&& sideOf(yValues[k + 1], yMin, yMax) == side)
+							continue;
+						double xPix = scaleToRange(xValues[k], xRange, imageWidth);
+						double yPix = scaleToRange(yValues[k], yRange, imageHeight);
+						xPix = Math.max(-PIXEL_LIMIT, Math.min(width + PIXEL_LIMIT, xPix));
+						yPix = Math.max(-PIXEL_LIMIT, Math.min(height + PIXEL_LIMIT, yPix));
+						this.xPixels[point] = (int)(Math.round(xPix));
+						this.yPixels[point] = height - (int)(yPix);
+						point++;
+					}
+				}
+			}
+		}
+		RenderMetrics.count(RenderMetrics.Counter.CULLED, points - point);
+		this.pointCount = point;
+		this.polylineCount = polylines;
+		this.curveCount = visible.length;
+	}
+
+	/**
+	 * Determines which side of a range of y-values a y-value is on.
+	 * 
+	 * @param y the y-value.
+	 * @param yMin the lowest y-value in the range.
+	 * @param yMax the highest y-value in the range.
+	 * @return {@code -1} if the y-value is below the range, {@code 1} if it is above the
+	 * range, or {@code 0} if it is in the range.
+	 */
+	private static int sideOf(double y, double yMin, double yMax) {
+		if (y < yMin)
+			return -1;
+		return (y > yMax) ? 1 : 0;
+	}
+
+	/**
+	 * Grows the pixel coordinate buffers, if needed, so that they can hold the given
+	 * number of points, polylines and curves.
+	 * 
+	 * @param points the number of points that the buffers must be able to hold.
+	 * @param polylines the number of polylines that the buffers must be able to hold.
+	 * @param curves the number of curves that the buffers must be able to hold.
+	 */
+	private void ensurePointCapacity(int points, int polylines, int curves) {
+		if (this.xPixels.length < points) {
+			this.xPixels = new int[points];
+			this.yPixels = new int[points];
+		}
+		if (this.polylineStarts.length < polylines) {
+			this.polylineStarts = new int[polylines];
+		}
+		if (this.curveStarts.length < curves) {
+			this.curveStarts = new int[curves];
+		}
+	}
+
+	/**
+	 * Draws the plotted curves with the given graphics context.
+	 * 
+	 * @param g the graphics context to draw with.
+	 */
+	public void draw(Graphics2D g) {
+		RenderMetrics.StageEvent start = RenderMetrics.start();
+		drawCurves(g, this.xPixels, this.yPixels, this.pointCount, this.polylineStarts,
+				this.polylineCount, this.curveStarts, this.curveCount);
+		RenderMetrics.count(RenderMetrics.Counter.POINTS, this.pointCount);
+		RenderMetrics.end(RenderMetrics.Stage.PAINT, start, this.pointCount);
+	}
+
+	/**
+	 * Draws a set of polylines with the given graphics context, in the style of a graph.
+	 * Polyline {@code i} runs from point {@code starts[i]} up to, but not including,
+	 * point {@code starts[i + 1]}; the last polyline runs up to point {@code n}.
+	 * 
+	 * @param g the graphics context to draw with.
+	 * @param xs the x-coordinates of the points.
+	 * @param ys the y-coordinates of the points.
+	 * @param n the number of points to use from the arrays.
+	 * @param starts the index of the first point of each polyline.
+	 * @param polylines the number of polylines to use from the array of starts.
+	 */
+	public static void drawPolylines(Graphics2D g, int[] xs, int[] ys, int n, int[] starts,
+			int polylines) {
+		drawCurves(g, xs, ys, n, starts, polylines, new int[] {0}, 1);
+	}
+
+	/**
+	 * Draws several curves with the given graphics context, in the style of a graph,
+	 * each in its own color. Each curve is a set of polylines: curve {@code c} is made of
+	 * the polylines from {@code curveStarts[c]} up to, but not including,
+	 * {@code curveStarts[c + 1]}, and the polylines are laid out as in
+	 * {@link #drawPolylines(Graphics2D, int[], int[], int, int[], int)}.
+	 * 
+	 * @param g the graphics context to draw with.
+	 * @param xs the x-coordinates of the points.
+	 * @param ys the y-coordinates of the points.
+	 * @param n the number of points to use from the arrays.
+	 * @param starts the index of the first point of each polyline.
+	 * @param polylines the number of polylines to use from the array of starts.
+	 * @param curveStarts the index of the first polyline of each curve.
+	 * @param curves the number of curves to use from the array of curve starts.
+	 */
+	public static void drawCurves(Graphics2D g, int[] xs, int[] ys, int n, int[] starts,
+			int polylines, int[] curveStarts, int curves) {
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setStroke(new BasicStroke(LINE_THICKNESS, BasicStroke.CAP_ROUND,
+				BasicStroke.JOIN_ROUND));
+		for (int curve = 0; curve < curves; curve++) {
+			int firstLine = curveStarts[curve];
+			int endLine = (curve + 1 < curves) ? curveStarts[curve + 1] : polylines;
+			if (firstLine >= endLine)
+				continue;
+			int endPoint = (endLine < polylines) ? starts[endLine] : n;
+			Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO,
+					endPoint - starts[firstLine] + 1);
+			for (int line = firstLine; line < endLine; line++) {
+				int start = starts[line];
+				int end = (line + 1 < polylines) ? starts[line + 1] : n;
+				path.moveTo(xs[start], ys[start]);
+				if (end - start == 1)
+					path.lineTo(xs[start], ys[start]);
+				for (int i = start + 1; i < end; i++) {
+					path.lineTo(xs[i], ys[i]);
+				}
+			}
+			g.setColor(getLineColor(curve));
+			g.draw(path);
+		}
+	}
+
+	/**
+	 * Gets the color that the curve with the given index is drawn in.
+	 * 
+	 * @param curve the index of the curve.
+	 * @return the color of the curve.
+	 */
+	public static Color getLineColor(int curve) {
+		return LINE_COLORS[curve % LINE_COLORS.length];
+	}
+
+	/**
+	 * Gets the pixel x-coordinates of the plotted points. Only the first
+	 * {@link #getPointCount()} elements are used.
+	 * 
+	 * @return the pixel x-coordinates of the plotted points.
+	 */
+	public int[] getXPixels() {
+		return this.xPixels;
+	}
+
+	/**
+	 * Gets the pixel y-coordinates of the plotted points. Only the first
+	 * {@link #getPointCount()} elements are used.
+	 * 
+	 * @return the pixel y-coordinates of the plotted points.
+	 */
+	public int[] getYPixels() {
+		return this.yPixels;
+	}
+
+	/**
+	 * Gets the number of plotted points.
+	 * 
+	 * @return the number of plotted points.
+	 */
+	public int getPointCount() {
+		return this.pointCount;
+	}
+
+	/**
+	 * Gets the index of the first point of each polyline. Only the first
+	 * {@link #getPolylineCount()} elements are used.
+	 * 
+	 * @return the index of the first point of each polyline.
+	 */
+	public int[] getPolylineStarts() {
+		return this.polylineStarts;
+	}
+
+	/**
+	 * Gets the number of polylines.
+	 * 
+	 * @return the number of polylines.
+	 */
+	public int getPolylineCount() {
+		return this.polylineCount;
+	}
+
+	/**
+	 * Gets the index of the first polyline of each curve. Only the first
+	 * {@link #getCurveCount()} elements are used.
+	 * 
+	 * @return the index of the first polyline of each curve.
+	 */
+	public int[] getCurveStarts() {
+		return this.curveStarts;
+	}
+
+	/**
+	 * Gets the number of curves; one for each function that was plotted.
+	 * 
+	 * @return the number of curves.
+	 */
+	public int getCurveCount() {
+		return this.curveCount;
+	}
+
+	/**
+	 * Scales a number within some range to a corresponding position relative
+	 * to another range. If the absolute value of the number is below the
+	 * input range, 0 will be returned. If the absolute value of the number is
+	 * above the input range, the maximum value of the output range, but with
+	 * the same polarity as the number, will be returned.
+	 * 
+	 * @param num the number to be scaled.
+	 * @param inputRange a two-element array representing the lowest and
+	 * and highest values, respectively, of the range to be scaled from.
+	 * @param outputRange a two-element array representing the lowest and
+	 * and highest values, respectively, of the range to be scaled to.
+	 * @return the number, scaled to the same relative position within the
+	 * output range.
+	 */
+	public static double scaleToRange(double num, double[] inputRange, double[] outputRange) {
+		double inputDifference = inputRange[1] - inputRange[0];
+		double outputDifference = outputRange[1] - outputRange[0];
+		double posInRange = (num - inputRange[0]) / inputDifference;
+		double posOutRange = outputRange[0] + (posInRange * outputDifference);
+		return posOutRange;
+	}
+
+	/**
+	 * A {@code TileTask} samples a contiguous range of the tiles that are missing from
+	 * the cache, or refines the cached tiles that are not precise enough, splitting
+	 * itself in half until each task has only a few tiles. The tiles are ordered by x
+	 * first and function second, so each task samples every function over the same
+	 * stretch of x-coordinates.
+	 */
+	private static class TileTask extends RecursiveAction {
+
+		/**
+		 * The sampler for each tile that needs to be sampled.
+		 */
+		private final AdaptiveSampler[] samplers;
+
+		/**
+		 * The function of each tile that needs to be sampled.
+		 */
+		private final Polynomial[] functions;
+
+		/**
+		 * The number of each tile that needs to be sampled.
+		 */
+		private final long[] tiles;
+
+		/**
+		 * The largest distance, in y, that a line segment of each tile may stray from the
+		 * curve.
+		 */
+		private final double[] tolerances;
+
+		/**
+		 * Whether each tile is refined from its cached samples, rather than sampled from
+		 * scratch.
+		 */
+		private final boolean[] refines;
+
+		/**
+		 * Whether each tile that needed to be sampled was sampled completely.
+		 */
+		private final boolean[] finished;
+
+		/**
+		 * The width, in x, of each tile.
+		 */
+		private final double tileSpan;
+
+		/**
+		 * The shortest line segment, in x, that will be split any further.
+		 */
+		private final double minStep;
+
+		/**
+		 * The condition for stopping early, or {@code null}.
+		 */
+		private final BooleanSupplier cancelled;
+
+		/**
+		 * The first tile that this task is responsible for.
+		 */
+		private final int from;
+
+		/**
+		 * The tile after the last one that this task is responsible for.
+		 */
+		private final int to;
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Constructs a new {@code TileTask} for the tiles from {@code from}, inclusive,
+		 * to {@code to}, exclusive.
+		 * 
+		 * @param samplers the sampler for each tile that needs to be sampled.
+		 * @param functions the function of each tile that needs to be sampled.
+		 * @param tiles the number of each tile that needs to be sampled.
+		 * @param tolerances the largest distance, in y, that a line segment of each tile
+		 * may stray from the curve.
+		 * @param refines whether each tile is refined from its cached samples.
+		 * @param finished the array to record whether each tile was sampled completely.
+		 * @param tileSpan the width, in x, of each tile.
+		 * @param minStep the shortest line segment, in x, that will be split any further.
+		 * @param cancelled the condition for stopping early, or {@code null}.
+		 * @param from the first tile to sample.
+		 * @param to the tile after the last one to sample.
+		 */
+		public TileTask(AdaptiveSampler[] samplers, Polynomial[] functions, long[] tiles,
+				double[] tolerances, boolean[] refines, boolean[] finished, double tileSpan,
+				double minStep, BooleanSupplier cancelled, int from, int to) {
+			this.samplers = samplers;
+			this.functions = functions;
+			this.tiles = tiles;
+			this.tolerances = tolerances;
+			this.refines = refines;
+			this.finished = finished;
+			this.tileSpan = tileSpan;
+			this.minStep = minStep;
+			this.cancelled = cancelled;
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * Samples or refines this task's tiles, or splits this task in half if it has too
+		 * many.
+		 */
+		@Override
+		protected void compute() {
+			if (this.to - this.from > TILES_PER_TASK) {
+				int middle = (this.from + this.to) >>> 1;
+				invokeAll(this.split(this.from, middle), this.split(middle, this.to));
+				return;
+			}
+			int segments = TILE_COLUMNS / INITIAL_SEGMENT_WIDTH;
+			for (int j = this.from; j < this.to; j++) {
+				long tile = this.tiles[j];
+				if (this.refines[j]) {
+					this.finished[j] = this.samplers[j].resample(this.tolerances[j],
+							this.cancelled);
+				} else {
+					this.finished[j] = this.samplers[j].sample(this.functions[j],
+							tile * this.tileSpan, (tile + 1) * this.tileSpan, segments,
+							this.tolerances[j], this.minStep, this.cancelled);
+				}
+			}
+		}
+
+		/**
+		 * Creates a task for part of this task's tiles.
+		 * 
+		 * @param start the first tile of the new task.
+		 * @param end the tile after the last one of the new task.
+		 * @return the new task.
+		 */
+		private TileTask split(int start, int end) {
+			return new TileTask(this.samplers, this.functions, this.tiles, this.tolerances,
+					this.refines, this.finished, this.tileSpan, this.minStep, this.cancelled,
+					start, end);
+		}
+
+	}
+
+}
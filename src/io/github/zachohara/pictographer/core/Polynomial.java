@@ -17,7 +17,10 @@
 package io.github.zachohara.pictographer.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.function.DoubleUnaryOperator;
 
 /**
  * A {@code Polynomial} object represents a mathematical polynomial function. It can be
@@ -32,11 +35,76 @@ public class Polynomial {
 	 */
 	private final List<Term> terms;
 
+	/**
+	 * The compiled form of this polynomial, which stores its terms in canonical form.
+	 * This is {@code null} if the polynomial has changed since it was last compiled.
+	 */
+	private volatile CompiledForm compiled;
+
+	/**
+	 * Whether terms can no longer be added to this polynomial. Derivatives are frozen,
+	 * because they are shared by every caller of {@link #derivative()}.
+	 */
+	private final boolean frozen;
+
+
+	/**
+	 * The highest degree of a polynomial whose coefficients will be stored in a dense
+	 * array. Polynomials of a higher degree are always stored sparsely.
+	 */
+	public static final int MAX_DENSE_DEGREE = 4096;
+
+	/**
+	 * The highest degree of a polynomial whose coefficients will always be stored in a
+	 * dense array, no matter how few of them are non-zero.
+	 */
+	public static final int MIN_SPARSE_DEGREE = 16;
+
+	/**
+	 * The fill factor that decides between dense and sparse storage. A polynomial above
+	 * {@link #MIN_SPARSE_DEGREE} is stored densely only if at least one in this many of
+	 * its coefficients is non-zero.
+	 */
+	public static final int DENSE_FILL_FACTOR = 4;
+
+	/**
+	 * The highest degree for which {@link #sampleUniform(double, double, int, double[])}
+	 * will use forward differences. Higher-order difference tables lose too much
+	 * precision to be useful, so higher-degree polynomials are evaluated directly.
+	 */
+	public static final int MAX_FORWARD_DIFFERENCE_DEGREE = 8;
+
+	/**
+	 * The number of samples after which the forward difference table is rebuilt from
+	 * direct evaluations, to stop rounding error from accumulating across wide images.
+	 */
+	public static final int FORWARD_DIFFERENCE_RESEED_INTERVAL = 256;
+
+	/**
+	 * The table used to convert Taylor coefficients into forward differences.
+	 */
+	private static final double[][] SCALED_STIRLING_NUMBERS =
+			buildScaledStirlingNumbers(MAX_FORWARD_DIFFERENCE_DEGREE);
+
 	/**
 	 * Constructs a new polynomial with no terms.
 	 */
 	public Polynomial() {
 		this.terms = new ArrayList<Term>();
+		this.compiled = null;
+		this.frozen = false;
+	}
+
+	/**
+	 * Constructs a new frozen polynomial with the given terms, to which no more terms
+	 * can be added.
+	 * 
+	 * @param terms the terms of the new polynomial.
+	 */
+	private Polynomial(List<Term> terms) {
+		this.terms = terms;
+		this.compiled = null;
+		this.frozen = true;
 	}
 
 	/**
@@ -45,10 +113,11 @@ public class Polynomial {
 	 * @param coefficient the coefficient of x in the new term.
 	 * @param power the power of x in the new term.
 	 * @return this polynomial after adding the new term.
+	 * @throws UnsupportedOperationException if this polynomial is the derivative of
+	 * another polynomial.
 	 */
 	public Polynomial addTerm(double coefficient, double power) {
-		this.terms.add(new Term(coefficient, power));
-		return this;
+		return this.addTerm(new Term(coefficient, power));
 	}
 
 	/**
@@ -56,12 +125,80 @@ public class Polynomial {
 	 * 
 	 * @param t the {@code Term} to add to this polynomial.
 	 * @return this polynomial after adding the new term.
+	 * @throws UnsupportedOperationException if this polynomial is the derivative of
+	 * another polynomial.
 	 */
 	public Polynomial addTerm(Term t) {
+		if (this.frozen)
+			throw new UnsupportedOperationException("A derivative cannot be modified");
 		this.terms.add(t);
+		this.compiled = null;
 		return this;
 	}
 
+	/**
+	 * Builds the compiled form of this polynomial, if it has not already been built. The
+	 * compiled form is rebuilt automatically after any new term is added, so calling
+	 * this method is never required; it only moves the cost of compiling out of the
+	 * first call to {@link #valueAt(double)}.
+	 * <p>
+	 * The compiled form is canonical: terms with the same exponent are merged, terms
+	 * with a coefficient of zero are dropped, and the remaining terms are sorted by
+	 * exponent. If every exponent is a non-negative integer, the coefficients are stored
+	 * either densely, indexed by exponent, or sparsely, depending on how many of them are
+	 * non-zero. Either way, the cost of evaluating this polynomial depends only on its
+	 * distinct terms, not on how it was written.
+	 * 
+	 * @return this polynomial after compiling it.
+	 */
+	public Polynomial compile() {
+		this.getCompiledForm();
+		return this;
+	}
+
+	/**
+	 * Determines if this polynomial can be evaluated with Horner's scheme; that is, if
+	 * every exponent is a non-negative integer.
+	 * 
+	 * @return {@code true} if this polynomial has only non-negative integer exponents;
+	 * {@code false} otherwise.
+	 */
+	public boolean isIntegral() {
+		return this.getCompiledForm().integral;
+	}
+
+	/**
+	 * Gets the number of distinct terms of this polynomial with non-zero coefficients.
+	 * 
+	 * @return the number of terms in the canonical form of this polynomial.
+	 */
+	public int getDistinctTermCount() {
+		return this.getCompiledForm().exponents.length;
+	}
+
+	/**
+	 * Gets the degree of this polynomial; that is, its highest exponent with a non-zero
+	 * coefficient.
+	 * 
+	 * @return the degree of this polynomial, or zero if every coefficient is zero.
+	 */
+	public double getDegree() {
+		double[] exponents = this.getCompiledForm().exponents;
+		return (exponents.length == 0) ? 0 : exponents[exponents.length - 1];
+	}
+
+	/**
+	 * Gets the lowest exponent of this polynomial with a non-zero coefficient. If it is
+	 * negative, this polynomial has a pole at zero.
+	 * 
+	 * @return the lowest exponent of this polynomial, or zero if every coefficient is
+	 * zero.
+	 */
+	public double getLowestExponent() {
+		double[] exponents = this.getCompiledForm().exponents;
+		return (exponents.length == 0) ? 0 : exponents[0];
+	}
+
 	/**
 	 * Calculates the y-value of this polynomial function at the given x-coordinate.
 	 * 
@@ -71,13 +208,491 @@ public class Polynomial {
 	public double valueAt(double x) {
 		if (this.terms.size() == 0)
 			return Double.NaN;
-		double value = 0;
-		for (Term t : this.terms) {
-			value += t.valueAtX(x);
+		return this.getCompiledForm().valueAt(x);
+	}
+
+	/**
+	 * Calculates bounds on the y-values of this polynomial function over a range of
+	 * x-coordinates, with interval arithmetic. Every y-value of this polynomial between
+	 * the two x-coordinates, inclusive, is between {@code out[0]} and {@code out[1]},
+	 * including any rounding error; but the bounds may be wider than the true range of
+	 * y-values.
+	 * <p>
+	 * Dense polynomials are bounded by running Horner's scheme over intervals, and
+	 * other polynomials by adding up bounds on each of their terms. For polynomials with
+	 * integer exponents, the bounds are also narrowed with the mean value theorem, from
+	 * the y-value at the middle of the range and bounds on the slope. This keeps the
+	 * bounds close to the true range over short intervals, where interval arithmetic
+	 * alone would overestimate it badly.
+	 * <p>
+	 * If this polynomial is undefined anywhere in the range, the bounds are infinite;
+	 * and if it has no terms, they are {@code NaN}.
+	 * 
+	 * @param xMin one end of the range of x-coordinates.
+	 * @param xMax the other end of the range of x-coordinates.
+	 * @param out the array to store the lower and upper bounds in.
+	 * @return the array of bounds.
+	 */
+	public double[] boundsOver(double xMin, double xMax, double[] out) {
+		if (this.terms.size() == 0) {
+			out[0] = Double.NaN;
+			out[1] = Double.NaN;
+			return out;
+		}
+		double a = Math.min(xMin, xMax);
+		double b = Math.max(xMin, xMax);
+		CompiledForm form = this.getCompiledForm();
+		form.boundsOver(a, b, out);
+		if (!form.integral || form.exponents.length == 0)
+			return out;
+		double lower = out[0];
+		double upper = out[1];
+		this.derivative().getCompiledForm().boundsOver(a, b, out);
+		double slope = Math.max(Math.abs(out[0]), Math.abs(out[1]));
+		double middle = a + (b - a) / 2;
+		double radius = Math.nextUp(Math.max(middle - a, b - middle));
+		double value = form.valueAt(middle);
+		double error = 2 * (this.getDegree() + 1) * Math.ulp(1.0) * this.magnitudeAt(middle);
+		double spread = Math.nextUp(Math.nextUp(slope * radius) + error);
+		if (Double.isNaN(value) || Double.isNaN(spread)) {
+			out[0] = lower;
+			out[1] = upper;
+			return out;
+		}
+		out[0] = Math.max(lower, Math.nextDown(value - spread));
+		out[1] = Math.min(upper, Math.nextUp(value + spread));
+		return out;
+	}
+
+	/**
+	 * Calculates the y-value of this polynomial function at the given x-coordinate, with
+	 * compensated arithmetic. The rounding error of every addition and multiplication is
+	 * recovered exactly, with {@code Math.fma} and the TwoSum algorithm, and the errors
+	 * are added back in at the end. The result is about as accurate as if the polynomial
+	 * had been evaluated with twice the precision of a {@code double} and then rounded,
+	 * so it stays accurate where {@link #valueAt(double)} would lose most of its digits
+	 * to cancellation, such as for a high-degree polynomial far from the origin. It costs
+	 * a few times as much as {@link #valueAt(double)}.
+	 * <p>
+	 * Powers of x in sparse polynomials are also calculated with compensated
+	 * arithmetic. Fractional powers are calculated with {@code Math.pow}, whose own
+	 * rounding error is not recovered, but the sum of the terms is still compensated.
+	 * 
+	 * @param x the x-coordinate to calculate a y-value for.
+	 * @return the y-value at the given x-value.
+	 */
+	public double compensatedValueAt(double x) {
+		if (this.terms.size() == 0)
+			return Double.NaN;
+		return this.getCompiledForm().compensatedValueAt(x);
+	}
+
+	/**
+	 * Calculates the sum of the absolute values of the terms of this polynomial at the
+	 * given x-coordinate. The rounding error of {@link #valueAt(double)} is bounded by a
+	 * small multiple of this sum, so it tells how close to zero a y-value must be before
+	 * it cannot be told apart from zero.
+	 * 
+	 * @param x the x-coordinate to calculate the sum at.
+	 * @return the sum of the absolute values of the terms at the given x-value.
+	 */
+	double magnitudeAt(double x) {
+		CompiledForm form = this.getCompiledForm();
+		if (form.dense != null) {
+			double magnitude = Math.abs(form.dense[form.dense.length - 1]);
+			for (int i = form.dense.length - 2; i >= 0; i--) {
+				magnitude = magnitude * Math.abs(x) + Math.abs(form.dense[i]);
+			}
+			return magnitude;
+		}
+		double magnitude = 0;
+		for (int i = 0; i < form.exponents.length; i++) {
+			magnitude += Math.abs(form.coefficients[i] * Math.pow(x, form.exponents[i]));
+		}
+		return magnitude;
+	}
+
+	/**
+	 * Calculates the y-value, the slope and the second derivative of this polynomial
+	 * function at the given x-coordinate, all in one pass over its terms. The y-value is
+	 * stored in {@code out[0]}, the slope in {@code out[1]}, and the second derivative in
+	 * {@code out[2]}. This is cheaper than evaluating this polynomial and its first two
+	 * derivatives one after another, and gives the same results to within rounding.
+	 * <p>
+	 * If this polynomial has no terms, all three values are {@code NaN}.
+	 * 
+	 * @param x the x-coordinate to calculate the values at.
+	 * @param out the array to store the values in; its length must be at least three.
+	 * @return the array of values.
+	 */
+	public double[] valueAndDerivativesAt(double x, double[] out) {
+		if (this.terms.size() == 0) {
+			out[0] = Double.NaN;
+			out[1] = Double.NaN;
+			out[2] = Double.NaN;
+			return out;
+		}
+		this.getCompiledForm().valueAndDerivativesAt(x, out);
+		return out;
+	}
+
+	/**
+	 * Gets an operator that calculates the y-values of this polynomial function. Unless
+	 * the {@code BytecodeCompiler} has been turned off, the operator is an instance of a
+	 * class that was generated for this polynomial, so that evaluating it in a loop is as
+	 * fast as a hand-written expression. Polynomials whose generated code would be too
+	 * large for the JIT compiler to compile are evaluated by {@link #valueAt(double)}
+	 * instead. The operator is chosen once and then reused until a term is added to this
+	 * polynomial.
+	 * 
+	 * @return an operator that gives the same y-values as {@link #valueAt(double)}.
+	 */
+	public DoubleUnaryOperator toOperator() {
+		CompiledForm form = this.getCompiledForm();
+		if (this.terms.size() == 0 || !BytecodeCompiler.isEnabled())
+			return this.interpretedOperator();
+		DoubleUnaryOperator operator = form.operator;
+		if (operator == null) {
+			DoubleUnaryOperator interpreted = this.interpretedOperator();
+			operator = BytecodeCompiler.compile(form.exponents, form.coefficients, form.dense,
+					form.gaps, interpreted);
+			if (operator == null)
+				operator = interpreted;
+			form.operator = operator;
+		}
+		return operator;
+	}
+
+	/**
+	 * Gets an operator that calculates the y-values of this polynomial function with
+	 * either compensated or ordinary arithmetic.
+	 * 
+	 * @param compensated whether the operator should use
+	 * {@link #compensatedValueAt(double)}.
+	 * @return an operator that calculates the y-values of this polynomial, either
+	 * compensated or from {@link #toOperator()}.
+	 */
+	public DoubleUnaryOperator toOperator(boolean compensated) {
+		if (!compensated)
+			return this.toOperator();
+		return new DoubleUnaryOperator() {
+			@Override
+			public double applyAsDouble(double x) {
+				return Polynomial.this.compensatedValueAt(x);
+			}
+		};
+	}
+
+	/**
+	 * Gets an operator that calculates the y-values of this polynomial function with
+	 * {@link #valueAt(double)}.
+	 * 
+	 * @return an operator that evaluates this polynomial without generating a class.
+	 */
+	private DoubleUnaryOperator interpretedOperator() {
+		return new DoubleUnaryOperator() {
+			@Override
+			public double applyAsDouble(double x) {
+				return Polynomial.this.valueAt(x);
+			}
+		};
+	}
+
+	/**
+	 * Calculates the y-values of this polynomial function at {@code n} evenly spaced
+	 * x-coordinates, starting at {@code x0} and increasing by {@code dx} each time. The
+	 * value at {@code x0 + i * dx} is stored in {@code out[i]}.
+	 * <p>
+	 * For compiled polynomials of a low enough degree, the values are calculated with
+	 * forward differences, which costs one addition per degree for each sample. The
+	 * difference table is rebuilt from direct evaluations every
+	 * {@link #FORWARD_DIFFERENCE_RESEED_INTERVAL} samples. Other polynomials are
+	 * evaluated at each x-coordinate with {@link #toOperator()}.
+	 * 
+	 * @param x0 the first x-coordinate to calculate a y-value for.
+	 * @param dx the distance between consecutive x-coordinates.
+	 * @param n the number of y-values to calculate.
+	 * @param out the array to store the y-values in.
+	 */
+	public void sampleUniform(double x0, double dx, int n, double[] out) {
+		double[] coefficients = this.terms.size() == 0 ? null
+				: this.getCompiledForm().dense;
+		if (coefficients == null
+				|| coefficients.length - 1 > MAX_FORWARD_DIFFERENCE_DEGREE) {
+			DoubleUnaryOperator operator = this.toOperator();
+			for (int i = 0; i < n; i++) {
+				out[i] = operator.applyAsDouble(x0 + i * dx);
+			}
+			return;
+		}
+		int degree = coefficients.length - 1;
+		double[] differences = new double[degree + 1];
+		int i = 0;
+		while (i < n) {
+			buildDifferenceTable(coefficients, x0 + i * dx, dx, differences);
+			int end = Math.min(n, i + FORWARD_DIFFERENCE_RESEED_INTERVAL);
+			for (; i < end; i++) {
+				out[i] = differences[0];
+				for (int j = 0; j < degree; j++) {
+					differences[j] += differences[j + 1];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fills a forward difference table for a dense coefficient array, starting at the
+	 * given x-coordinate. When this method returns, {@code differences[k]} holds the
+	 * k-th forward difference of the polynomial at {@code x}, with step {@code dx}.
+	 * <p>
+	 * The table is not built by subtracting neighbouring samples, which would cancel
+	 * away almost every significant digit of the higher differences. Instead, the
+	 * polynomial is first shifted to be centered on {@code x}, so that its coefficients
+	 * {@code b[j]} are its Taylor coefficients there, and then each difference is
+	 * calculated as the sum of {@code b[j] * dx^j * k! * S(j, k)}, where {@code S} is a
+	 * Stirling number of the second kind.
+	 * 
+	 * @param coefficients the coefficients to evaluate, indexed by exponent.
+	 * @param x the x-coordinate to start the table at.
+	 * @param dx the distance between consecutive x-coordinates.
+	 * @param differences the array to store the table in; its length must be one more
+	 * than the degree of the polynomial.
+	 */
+	private static void buildDifferenceTable(double[] coefficients, double x, double dx,
+			double[] differences) {
+		int degree = differences.length - 1;
+		System.arraycopy(coefficients, 0, differences, 0, differences.length);
+		for (int k = 0; k < degree; k++) {
+			for (int j = degree - 1; j >= k; j--) {
+				differences[j] += x * differences[j + 1];
+			}
+		}
+		double step = 1;
+		for (int j = 0; j <= degree; j++) {
+			differences[j] *= step;
+			step *= dx;
+		}
+		for (int k = 0; k <= degree; k++) {
+			double sum = 0;
+			for (int j = k; j <= degree; j++) {
+				sum += differences[j] * SCALED_STIRLING_NUMBERS[j][k];
+			}
+			differences[k] = sum;
+		}
+	}
+
+	/**
+	 * Builds the table of {@code k! * S(j, k)} for every {@code 0 <= k <= j <= degree},
+	 * where {@code S} is a Stirling number of the second kind. This is the k-th forward
+	 * difference of {@code t^j} at {@code t = 0}, with a step of one.
+	 * 
+	 * @param degree the highest value of {@code j} to include in the table.
+	 * @return the table, indexed as {@code [j][k]}.
+	 */
+	private static double[][] buildScaledStirlingNumbers(int degree) {
+		double[][] table = new double[degree + 1][];
+		table[0] = new double[] {1};
+		for (int j = 1; j <= degree; j++) {
+			table[j] = new double[j + 1];
+			for (int k = 1; k <= j; k++) {
+				double previous = k < j ? table[j - 1][k] : 0;
+				table[j][k] = k * (previous + table[j - 1][k - 1]);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Gets the compiled form of this polynomial, building it first if it has not been
+	 * built since the last change to this polynomial.
+	 * 
+	 * @return the compiled form of this polynomial.
+	 */
+	private CompiledForm getCompiledForm() {
+		CompiledForm form = this.compiled;
+		if (form == null) {
+			form = this.buildCompiledForm();
+			this.compiled = form;
+		}
+		return form;
+	}
+
+	/**
+	 * Builds the canonical, compiled form of this polynomial from its list of terms.
+	 * 
+	 * @return the compiled form of this polynomial.
+	 */
+	private CompiledForm buildCompiledForm() {
+		Term[] sorted = this.terms.toArray(new Term[this.terms.size()]);
+		Arrays.sort(sorted, new Comparator<Term>() {
+			@Override
+			public int compare(Term a, Term b) {
+				return Double.compare(a.exponent, b.exponent);
+			}
+		});
+		double[] exponents = new double[sorted.length];
+		double[] coefficients = new double[sorted.length];
+		int count = 0;
+		for (Term t : sorted) {
+			if (count > 0 && exponents[count - 1] == t.exponent) {
+				coefficients[count - 1] += t.coefficient;
+			} else {
+				exponents[count] = t.exponent;
+				coefficients[count] = t.coefficient;
+				count++;
+			}
+		}
+		int kept = 0;
+		for (int i = 0; i < count; i++) {
+			if (coefficients[i] != 0) {
+				exponents[kept] = exponents[i];
+				coefficients[kept] = coefficients[i];
+				kept++;
+			}
+		}
+		return new CompiledForm(Arrays.copyOf(exponents, kept),
+				Arrays.copyOf(coefficients, kept));
+	}
+
+	/**
+	 * Evaluates a dense coefficient array at the given x-coordinate, using Horner's
+	 * scheme.
+	 * 
+	 * @param coefficients the coefficients to evaluate, indexed by exponent.
+	 * @param x the x-coordinate to calculate a y-value for.
+	 * @return the y-value at the given x-value.
+	 */
+	private static double evaluateHorner(double[] coefficients, double x) {
+		double value = coefficients[coefficients.length - 1];
+		for (int i = coefficients.length - 2; i >= 0; i--) {
+			value = value * x + coefficients[i];
 		}
 		return value;
 	}
 
+	/**
+	 * Evaluates a dense coefficient array at the given x-coordinate, using the
+	 * compensated Horner scheme. Each step of Horner's scheme rounds one product and one
+	 * sum; their exact rounding errors are found with {@code Math.fma} and TwoSum, and
+	 * are themselves run through Horner's scheme to correct the result.
+	 * 
+	 * @param coefficients the coefficients to evaluate, indexed by exponent.
+	 * @param x the x-coordinate to calculate a y-value for.
+	 * @return the y-value at the given x-value.
+	 */
+	private static double evaluateCompensatedHorner(double[] coefficients, double x) {
+		double value = coefficients[coefficients.length - 1];
+		double correction = 0;
+		for (int i = coefficients.length - 2; i >= 0; i--) {
+			double product = value * x;
+			double productError = Math.fma(value, x, -product);
+			value = product + coefficients[i];
+			double sumError = twoSumError(product, coefficients[i], value);
+			correction = correction * x + (productError + sumError);
+		}
+		return value + correction;
+	}
+
+	/**
+	 * Calculates the exact rounding error of a sum of two numbers, with the TwoSum
+	 * algorithm. The error is exact as long as the sum does not overflow.
+	 * 
+	 * @param a the first number.
+	 * @param b the second number.
+	 * @param sum the sum of the two numbers, rounded to a {@code double}.
+	 * @return the difference between the exact sum and the rounded sum.
+	 */
+	private static double twoSumError(double a, double b, double sum) {
+		double bVirtual = sum - a;
+		double aVirtual = sum - bVirtual;
+		return (a - aVirtual) + (b - bVirtual);
+	}
+
+	/**
+	 * Raises a number to a non-negative integer power, by repeated squaring, and keeps
+	 * the rounding errors of the multiplications. The power is stored as an unevaluated
+	 * sum of two numbers, {@code out[0] + out[1]}, which holds about twice the precision
+	 * of a single {@code double}.
+	 * 
+	 * @param x the base.
+	 * @param n the exponent.
+	 * @param out the array to store the leading part and the error of the power in.
+	 */
+	private static void compensatedPowInt(double x, int n, double[] out) {
+		double high = 1;
+		double low = 0;
+		double baseHigh = x;
+		double baseLow = 0;
+		while (n > 0) {
+			if ((n & 1) != 0) {
+				double product = high * baseHigh;
+				double error = Math.fma(high, baseHigh, -product)
+						+ (high * baseLow + low * baseHigh);
+				high = product + error;
+				low = error - (high - product);
+			}
+			n >>>= 1;
+			if (n > 0) {
+				double square = baseHigh * baseHigh;
+				double error = Math.fma(baseHigh, baseHigh, -square) + 2 * baseHigh * baseLow;
+				baseHigh = square + error;
+				baseLow = error - (baseHigh - square);
+			}
+		}
+		out[0] = high;
+		out[1] = low;
+	}
+
+	/**
+	 * Calculates bounds on a power of every x-coordinate in a range, including the
+	 * rounding error of {@code Math.pow}. A power is monotonic on any range that does
+	 * not contain zero, so it is bounded by its values at the ends of the range; ranges
+	 * that contain zero are handled separately.
+	 * 
+	 * @param a the lower end of the range.
+	 * @param b the upper end of the range.
+	 * @param e the exponent.
+	 * @param out the array to store the lower and upper bounds in.
+	 */
+	private static void powerBounds(double a, double b, double e, double[] out) {
+		boolean integer = (e == Math.rint(e));
+		if ((a < 0 && !integer) || (e < 0 && a <= 0 && b >= 0)) {
+			out[0] = Double.NEGATIVE_INFINITY;
+			out[1] = Double.POSITIVE_INFINITY;
+			return;
+		}
+		double pa = Math.pow(a, e);
+		double pb = Math.pow(b, e);
+		if (e == 0) {
+			out[0] = 1;
+			out[1] = 1;
+		} else if (integer && e > 0 && e % 2 == 0 && a < 0 && b > 0) {
+			out[0] = 0;
+			out[1] = Math.nextUp(Math.max(pa, pb));
+		} else {
+			out[0] = Math.nextDown(Math.min(pa, pb));
+			out[1] = Math.nextUp(Math.max(pa, pb));
+		}
+	}
+
+	/**
+	 * Raises a number to a non-negative integer power, by repeated squaring.
+	 * 
+	 * @param x the base.
+	 * @param n the exponent.
+	 * @return {@code x} raised to the power of {@code n}.
+	 */
+	private static double powInt(double x, int n) {
+		double result = 1;
+		while (n > 0) {
+			if ((n & 1) != 0)
+				result *= x;
+			x *= x;
+			n >>>= 1;
+		}
+		return result;
+	}
+
 	/**
 	 * Builds a string that contains the source code for representing this polynomial
 	 * function in a LaTeX engine. This method assumes that every coefficient is a
@@ -98,19 +713,305 @@ public class Polynomial {
 
 	/**
 	 * Calculates the derivative of this polynomial and returns it as another
-	 * {@code Polynomial} object.
+	 * {@code Polynomial} object. The derivative is built from the canonical terms of
+	 * this polynomial, and is kept until a term is added to this polynomial, so calling
+	 * this method again, or calling it on the derivative to get higher derivatives,
+	 * does not build anything new. Because the derivative is shared, it is frozen: adding
+	 * a term to it throws an {@code UnsupportedOperationException}.
 	 * 
-	 * @return the {@code Polynomial} of this polynomial's derivative.
+	 * @return the {@code Polynomial} of this polynomial's derivative, or {@code null} if
+	 * this polynomial has no terms.
 	 */
 	public Polynomial derivative() {
-		if (terms.size() == 0) {
+		if (this.terms.size() == 0)
 			return null;
+		CompiledForm form = this.getCompiledForm();
+		Polynomial derivative = form.derivative;
+		if (derivative == null) {
+			List<Term> terms = new ArrayList<Term>(form.exponents.length);
+			for (int i = 0; i < form.exponents.length; i++) {
+				if (form.exponents[i] != 0) {
+					terms.add(new Term(form.coefficients[i] * form.exponents[i],
+							form.exponents[i] - 1));
+				}
+			}
+			if (terms.size() == 0)
+				terms.add(new Term(0, 0));
+			derivative = new Polynomial(terms);
+			form.derivative = derivative;
 		}
-		Polynomial p = new Polynomial();
-		for (Term t: terms) {
-			p.addTerm(t.derivative());
+		return derivative;
+	}
+
+	/**
+	 * A {@code CompiledForm} holds the canonical terms of a polynomial: distinct
+	 * exponents in increasing order, each with a non-zero coefficient. Polynomials with
+	 * only non-negative integer exponents also keep either a dense coefficient array or
+	 * the gaps between consecutive exponents, so that they can be evaluated with
+	 * Horner's scheme.
+	 */
+	private static final class CompiledForm {
+
+		/**
+		 * The distinct exponents, in increasing order.
+		 */
+		private final double[] exponents;
+
+		/**
+		 * The coefficient of each exponent.
+		 */
+		private final double[] coefficients;
+
+		/**
+		 * Whether every exponent is a non-negative integer.
+		 */
+		private final boolean integral;
+
+		/**
+		 * The coefficients indexed by exponent, or {@code null} if this polynomial is
+		 * stored sparsely.
+		 */
+		private final double[] dense;
+
+		/**
+		 * The first exponent, followed by the difference between each exponent and the
+		 * one before it, or {@code null} unless this polynomial is stored sparsely with
+		 * integer exponents.
+		 */
+		private final int[] gaps;
+
+		/**
+		 * The operator for these terms, or {@code null} if none has been chosen yet. This
+		 * is either a generated operator, or the interpreted operator if these terms
+		 * could not be compiled. A generated class can be unloaded once this form is
+		 * discarded.
+		 */
+		private volatile DoubleUnaryOperator operator;
+
+		/**
+		 * The derivative of these terms, or {@code null} if it has not been built yet.
+		 */
+		private volatile Polynomial derivative;
+
+		/**
+		 * Constructs a new {@code CompiledForm} from canonical terms, and chooses how to
+		 * store them.
+		 * 
+		 * @param exponents the distinct exponents, in increasing order.
+		 * @param coefficients the non-zero coefficient of each exponent.
+		 */
+		public CompiledForm(double[] exponents, double[] coefficients) {
+			this.exponents = exponents;
+			this.coefficients = coefficients;
+			boolean allIntegers = true;
+			for (double e : exponents) {
+				if (!(e >= 0 && e <= Integer.MAX_VALUE && e == Math.rint(e)))
+					allIntegers = false;
+			}
+			this.integral = allIntegers;
+			int degree = (exponents.length == 0) ? 0 : (int)(exponents[exponents.length - 1]);
+			if (allIntegers && degree <= MAX_DENSE_DEGREE && (degree <= MIN_SPARSE_DEGREE
+					|| exponents.length * DENSE_FILL_FACTOR >= degree + 1)) {
+				this.dense = new double[degree + 1];
+				for (int i = 0; i < exponents.length; i++) {
+					this.dense[(int)(exponents[i])] = coefficients[i];
+				}
+				this.gaps = null;
+			} else if (allIntegers) {
+				this.dense = null;
+				this.gaps = new int[exponents.length];
+				for (int i = 0; i < exponents.length; i++) {
+					int previous = (i == 0) ? 0 : (int)(exponents[i - 1]);
+					this.gaps[i] = (int)(exponents[i]) - previous;
+				}
+			} else {
+				this.dense = null;
+				this.gaps = null;
+			}
+		}
+
+		/**
+		 * Calculates the y-value of this polynomial function at the given x-coordinate.
+		 * 
+		 * @param x the x-coordinate to calculate a y-value for.
+		 * @return the y-value at the given x-value.
+		 */
+		public double valueAt(double x) {
+			if (this.dense != null)
+				return evaluateHorner(this.dense, x);
+			int last = this.exponents.length - 1;
+			if (this.gaps != null) {
+				double value = this.coefficients[last];
+				for (int i = last - 1; i >= 0; i--) {
+					value = value * powInt(x, this.gaps[i + 1]) + this.coefficients[i];
+				}
+				return value * powInt(x, this.gaps[0]);
+			}
+			double value = 0;
+			for (int i = 0; i <= last; i++) {
+				value += this.coefficients[i] * Math.pow(x, this.exponents[i]);
+			}
+			return value;
+		}
+
+		/**
+		 * Calculates bounds on the y-values of this polynomial function over a range of
+		 * x-coordinates, with interval arithmetic alone. Every result is rounded outward,
+		 * so the bounds include any rounding error.
+		 * 
+		 * @param a the lower end of the range.
+		 * @param b the upper end of the range.
+		 * @param out the array to store the lower and upper bounds in.
+		 */
+		public void boundsOver(double a, double b, double[] out) {
+			double lower;
+			double upper;
+			if (this.dense != null) {
+				lower = this.dense[this.dense.length - 1];
+				upper = lower;
+				for (int i = this.dense.length - 2; i >= 0; i--) {
+					double p1 = lower * a;
+					double p2 = lower * b;
+					double p3 = upper * a;
+					double p4 = upper * b;
+					double low = Math.min(Math.min(p1, p2), Math.min(p3, p4));
+					double high = Math.max(Math.max(p1, p2), Math.max(p3, p4));
+					lower = Math.nextDown(Math.nextDown(low) + this.dense[i]);
+					upper = Math.nextUp(Math.nextUp(high) + this.dense[i]);
+				}
+			} else {
+				lower = 0;
+				upper = 0;
+				for (int i = 0; i < this.exponents.length; i++) {
+					powerBounds(a, b, this.exponents[i], out);
+					double c = this.coefficients[i];
+					double low = (c > 0) ? c * out[0] : c * out[1];
+					double high = (c > 0) ? c * out[1] : c * out[0];
+					lower = Math.nextDown(lower + Math.nextDown(low));
+					upper = Math.nextUp(upper + Math.nextUp(high));
+				}
+			}
+			out[0] = lower;
+			out[1] = upper;
 		}
-		return p;
+
+		/**
+		 * Calculates the y-value of this polynomial function at the given x-coordinate,
+		 * with compensated arithmetic.
+		 * 
+		 * @param x the x-coordinate to calculate a y-value for.
+		 * @return the y-value at the given x-value.
+		 */
+		public double compensatedValueAt(double x) {
+			if (this.dense != null)
+				return evaluateCompensatedHorner(this.dense, x);
+			int last = this.exponents.length - 1;
+			double correction = 0;
+			if (this.gaps != null) {
+				double[] power = new double[2];
+				double value = this.coefficients[last];
+				for (int i = last; i >= 0; i--) {
+					compensatedPowInt(x, this.gaps[i], power);
+					double product = value * power[0];
+					double productError = Math.fma(value, power[0], -product)
+							+ value * power[1];
+					correction = correction * power[0] + productError;
+					value = product;
+					if (i > 0) {
+						value = product + this.coefficients[i - 1];
+						correction += twoSumError(product, this.coefficients[i - 1], value);
+					}
+				}
+				return value + correction;
+			}
+			double value = 0;
+			for (int i = 0; i <= last; i++) {
+				double power = Math.pow(x, this.exponents[i]);
+				double term = this.coefficients[i] * power;
+				double termError = Math.fma(this.coefficients[i], power, -term);
+				double sum = value + term;
+				correction += termError + twoSumError(value, term, sum);
+				value = sum;
+			}
+			return value + correction;
+		}
+
+		/**
+		 * Calculates the y-value, the slope and the second derivative of this polynomial
+		 * function at the given x-coordinate. Dense and sparse polynomials carry the
+		 * derivatives along with the value through Horner's scheme; polynomials with
+		 * fractional exponents add up the derivative of each term.
+		 * 
+		 * @param x the x-coordinate to calculate the values at.
+		 * @param out the array to store the y-value, slope and second derivative in.
+		 */
+		public void valueAndDerivativesAt(double x, double[] out) {
+			double value = 0;
+			double slope = 0;
+			double curvature = 0;
+			int last = this.exponents.length - 1;
+			if (this.dense != null) {
+				value = this.dense[this.dense.length - 1];
+				for (int i = this.dense.length - 2; i >= 0; i--) {
+					curvature = curvature * x + slope;
+					slope = slope * x + value;
+					value = value * x + this.dense[i];
+				}
+				curvature *= 2;
+			} else if (this.gaps != null) {
+				double[] power = new double[3];
+				value = this.coefficients[last];
+				for (int i = last; i >= 0; i--) {
+					powerAndDerivatives(x, this.gaps[i], power);
+					curvature = curvature * power[0] + 2 * slope * power[1]
+							+ value * power[2];
+					slope = slope * power[0] + value * power[1];
+					value = value * power[0];
+					if (i > 0)
+						value += this.coefficients[i - 1];
+				}
+			} else {
+				for (int i = 0; i <= last; i++) {
+					double c = this.coefficients[i];
+					double e = this.exponents[i];
+					value += c * Math.pow(x, e);
+					if (e != 0)
+						slope += c * e * Math.pow(x, e - 1);
+					if (e != 0 && e != 1)
+						curvature += c * e * (e - 1) * Math.pow(x, e - 2);
+				}
+			}
+			out[0] = value;
+			out[1] = slope;
+			out[2] = curvature;
+		}
+
+		/**
+		 * Calculates a non-negative integer power of a number, along with its first and
+		 * second derivatives with respect to that number.
+		 * 
+		 * @param x the base.
+		 * @param n the exponent.
+		 * @param out the array to store {@code x^n}, {@code n x^(n-1)} and
+		 * {@code n (n-1) x^(n-2)} in.
+		 */
+		private static void powerAndDerivatives(double x, int n, double[] out) {
+			if (n == 0) {
+				out[0] = 1;
+				out[1] = 0;
+				out[2] = 0;
+			} else if (n == 1) {
+				out[0] = x;
+				out[1] = 1;
+				out[2] = 0;
+			} else {
+				double p = powInt(x, n - 2);
+				out[0] = p * x * x;
+				out[1] = n * p * x;
+				out[2] = (double)(n) * (n - 1) * p;
+			}
+		}
+
 	}
 
 	/**
@@ -141,16 +1042,6 @@ public class Polynomial {
 			this.exponent = e;
 		}
 
-		/**
-		 * Calculates the y-value of this polynomial function at the given x-coordinate.
-		 * 
-		 * @param x the x-coordinate to calculate a y-value for.
-		 * @return the y-value at the given x-value.
-		 */
-		public double valueAtX(double x) {
-			return this.coefficient * Math.pow(x, this.exponent);
-		}
-
 		/**
 		 * Builds a string that contains the source code for representing this term in a
 		 * LaTeX engine.This method assumes that the coefficient for this term is a
@@ -170,18 +1061,6 @@ public class Polynomial {
 			return signum + frac + expStr;
 		}
 
-		/**
-		 * Calculates the derivative for this term, and returns it as another {@code Term}
-		 * object.
-		 * 
-		 * @return the derivative for this term.
-		 */
-		public Term derivative() {
-			if (this.exponent == 0)
-				return new Term(0, 0);
-			return new Term(this.coefficient * this.exponent, this.exponent - 1);
-		}
-
 		/**
 		 * {@inheritDoc}}
 		 */
@@ -0,0 +1,365 @@
+/* Copyright (C) 2015 Zach Ohara
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.github.zachohara.pictographer.core;
+
+import java.util.Arrays;
+
+/**
+ * A {@code PolynomialFitter} finds the polynomial of a given degree that best fits a
+ * set of points, in the least-squares sense, and updates the fit as each point is added.
+ * <p>
+ * The fit is found in the basis of Chebyshev polynomials of {@code t}, where {@code t}
+ * maps the given range of x-coordinates on to {@code [-1, 1]}, which is much better
+ * conditioned than the basis of powers of {@code x}. The least-squares problem is
+ * solved with a QR decomposition that is updated with Givens rotations: each new point
+ * is rotated into the triangular factor, which costs time proportional to the square of
+ * the degree no matter how many points have been added. Finding the coefficients costs
+ * the same. The coefficients are only converted to powers of {@code x} at the end, so
+ * that they can be used as a {@code Polynomial}.
+ * <p>
+ * While there are fewer points than coefficients, or the points do not determine every
+ * coefficient, such as when they all have the same x-coordinate, the fit has the
+ * highest degree that they do determine instead.
+ * 
+ * @author Zach Ohara
+ */
+public class PolynomialFitter {
+
+	/**
+	 * The x-coordinate that maps to {@code t = 0}.
+	 */
+	private final double center;
+
+	/**
+	 * The distance in x that maps to a distance of {@code 1} in {@code t}.
+	 */
+	private final double halfWidth;
+
+	/**
+	 * The degree of the polynomial to fit.
+	 */
+	private int degree;
+
+	/**
+	 * The upper-triangular factor of the QR decomposition, by row.
+	 */
+	private double[][] r;
+
+	/**
+	 * The y-coordinates of the points, rotated by the same rotations as the rows of the
+	 * triangular factor.
+	 */
+	private double[] rotatedY;
+
+	/**
+	 * The Chebyshev basis at the x-coordinate of the point that is being added.
+	 */
+	private double[] row;
+
+	/**
+	 * The x-coordinates of the points that have been added.
+	 */
+	private double[] xs;
+
+	/**
+	 * The y-coordinates of the points that have been added.
+	 */
+	private double[] ys;
+
+	/**
+	 * The number of points that have been added. Only the first {@code count} elements
+	 * of the coordinate arrays are used.
+	 */
+	private int count;
+
+
+	/**
+	 * The highest degree of polynomial that can be fitted.
+	 */
+	public static final int MAX_DEGREE = 20;
+
+	/**
+	 * The initial length of the coordinate arrays.
+	 */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Constructs a new {@code PolynomialFitter} with no points. The range of
+	 * x-coordinates only affects how well the fit is conditioned; points outside of it
+	 * may still be added.
+	 * 
+	 * @param degree the degree of the polynomial to fit, from {@code 0} to
+	 * {@value #MAX_DEGREE}.
+	 * @param xMin one end of the range of x-coordinates that the points are expected in.
+	 * @param xMax the other end of the range of x-coordinates.
+	 * @throws IllegalArgumentException if the degree is out of range, or the range of
+	 * x-coordinates is empty or not finite.
+	 */
+	public PolynomialFitter(int degree, double xMin, double xMax) {
+		double halfWidth = Math.abs(xMax - xMin) / 2;
+		if (!(halfWidth > 0 && halfWidth < Double.POSITIVE_INFINITY))
+			throw new IllegalArgumentException("The range of x-coordinates is not valid");
+		this.center = xMin / 2 + xMax / 2;
+		this.halfWidth = halfWidth;
+		this.xs = new double[INITIAL_CAPACITY];
+		this.ys = new double[INITIAL_CAPACITY];
+		this.count = 0;
+		this.setDegree(degree);
+	}
+
+	/**
+	 * Adds a point, and updates the fit to include it.
+	 * 
+	 * @param x the x-coordinate of the point.
+	 * @param y the y-coordinate of the point.
+	 */
+	public void addPoint(double x, double y) {
+		if (this.count == this.xs.length) {
+			this.xs = Arrays.copyOf(this.xs, this.count * 2);
+			this.ys = Arrays.copyOf(this.ys, this.count * 2);
+		}
+		this.xs[this.count] = x;
+		this.ys[this.count] = y;
+		this.count++;
+		this.rotateIn(x, y);
+	}
+
+	/**
+	 * Removes the point that was added last, if there is one. The fit is found again
+	 * from the remaining points, because removing a row from a QR decomposition is not
+	 * numerically stable.
+	 */
+	public void removeLastPoint() {
+		if (this.count > 0) {
+			this.count--;
+			this.refit();
+		}
+	}
+
+	/**
+	 * Removes every point.
+	 */
+	public void clear() {
+		this.count = 0;
+		this.refit();
+	}
+
+	/**
+	 * Changes the degree of the polynomial to fit, and finds the fit again from every
+	 * point that has been added.
+	 * 
+	 * @param degree the degree of the polynomial to fit, from {@code 0} to
+	 * {@value #MAX_DEGREE}.
+	 * @throws IllegalArgumentException if the degree is out of range.
+	 */
+	public void setDegree(int degree) {
+		if (degree < 0 || degree > MAX_DEGREE)
+			throw new IllegalArgumentException("The degree must be from 0 to " + MAX_DEGREE);
+		this.degree = degree;
+		this.r = new double[degree + 1][degree + 1];
+		this.rotatedY = new double[degree + 1];
+		this.row = new double[degree + 1];
+		this.refit();
+	}
+
+	/**
+	 * Gets the degree of the polynomial that is fitted, when there are enough points.
+	 * 
+	 * @return the degree of the fit.
+	 */
+	public int getDegree() {
+		return this.degree;
+	}
+
+	/**
+	 * Gets the number of points that have been added.
+	 * 
+	 * @return the number of points.
+	 */
+	public int getPointCount() {
+		return this.count;
+	}
+
+	/**
+	 * Gets the x-coordinate of a point that has been added.
+	 * 
+	 * @param index the index of the point, in the order it was added.
+	 * @return the x-coordinate of the point.
+	 */
+	public double getX(int index) {
+		return this.xs[index];
+	}
+
+	/**
+	 * Gets the y-coordinate of a point that has been added.
+	 * 
+	 * @param index the index of the point, in the order it was added.
+	 * @return the y-coordinate of the point.
+	 */
+	public double getY(int index) {
+		return this.ys[index];
+	}
+
+	/**
+	 * Finds the coefficients of the polynomial that best fits the points.
+	 * 
+	 * @return the coefficient of each power of {@code x}, from the constant term up,
+	 * or an empty array if there are no points.
+	 */
+	public double[] getCoefficients() {
+		int size = this.getFittedSize();
+		double[] chebyshev = new double[size];
+		for (int i = size - 1; i >= 0; i--) {
+			double sum = this.rotatedY[i];
+			for (int j = i + 1; j < size; j++) {
+				sum -= this.r[i][j] * chebyshev[j];
+			}
+			chebyshev[i] = sum / this.r[i][i];
+		}
+		return this.toPowersOfX(chebyshev);
+	}
+
+	/**
+	 * Finds the polynomial that best fits the points.
+	 * 
+	 * @return the compiled polynomial, which has no terms if there are no points.
+	 */
+	public Polynomial getPolynomial() {
+		double[] coefficients = this.getCoefficients();
+		Polynomial polynomial = new Polynomial();
+		for (int power = 0; power < coefficients.length; power++) {
+			if (coefficients[power] != 0)
+				polynomial.addTerm(coefficients[power], power);
+		}
+		return polynomial.compile();
+	}
+
+	/**
+	 * Gets the number of coefficients that the points determine: the number of leading
+	 * columns of the triangular factor whose diagonal elements are not negligible.
+	 * 
+	 * @return the number of coefficients of the fit.
+	 */
+	private int getFittedSize() {
+		double largest = 0;
+		for (int i = 0; i <= this.degree; i++) {
+			largest = Math.max(largest, Math.abs(this.r[i][i]));
+		}
+		double tolerance = largest * (this.degree + 1) * Math.ulp(1.0);
+		int size = 0;
+		while (size <= this.degree && Math.abs(this.r[size][size]) > tolerance) {
+			size++;
+		}
+		return size;
+	}
+
+	/**
+	 * Rotates a point into the QR decomposition, with one Givens rotation for each
+	 * column.
+	 * 
+	 * @param x the x-coordinate of the point.
+	 * @param y the y-coordinate of the point.
+	 */
+	private void rotateIn(double x, double y) {
+		double t = (x - this.center) / this.halfWidth;
+		this.row[0] = 1;
+		if (this.degree > 0)
+			this.row[1] = t;
+		for (int k = 2; k <= this.degree; k++) {
+			this.row[k] = 2 * t * this.row[k - 1] - this.row[k - 2];
+		}
+		for (int i = 0; i <= this.degree; i++) {
+			double a = this.row[i];
+			if (a == 0)
+				continue;
+			double[] ri = this.r[i];
+			double h = Math.hypot(ri[i], a);
+			double c = ri[i] / h;
+			double s = a / h;
+			ri[i] = h;
+			for (int j = i + 1; j <= this.degree; j++) {
+				double rij = ri[j];
+				ri[j] = c * rij + s * this.row[j];
+				this.row[j] = c * this.row[j] - s * rij;
+			}
+			double b = this.rotatedY[i];
+			this.rotatedY[i] = c * b + s * y;
+			y = c * y - s * b;
+		}
+	}
+
+	/**
+	 * Clears the QR decomposition and rotates every point into it again.
+	 */
+	private void refit() {
+		for (double[] ri : this.r) {
+			Arrays.fill(ri, 0);
+		}
+		Arrays.fill(this.rotatedY, 0);
+		for (int i = 0; i < this.count; i++) {
+			this.rotateIn(this.xs[i], this.ys[i]);
+		}
+	}
+
+	/**
+	 * Converts coefficients of Chebyshev polynomials of {@code t} into coefficients of
+	 * powers of {@code x}. The series is first expanded into powers of {@code t}, and
+	 * then {@code t} is replaced by {@code (x - center) / halfWidth} with Horner's rule.
+	 * 
+	 * @param chebyshev the coefficient of each Chebyshev polynomial.
+	 * @return the coefficient of each power of {@code x}, from the constant term up.
+	 */
+	private double[] toPowersOfX(double[] chebyshev) {
+		int size = chebyshev.length;
+		double[] powersOfT = new double[size];
+		double[] previous = new double[size];
+		double[] current = new double[size];
+		double[] next = new double[size];
+		for (int k = 0; k < size; k++) {
+			if (k == 0) {
+				current[0] = 1;
+			} else if (k == 1) {
+				previous[0] = 1;
+				current[0] = 0;
+				current[1] = 1;
+			} else {
+				for (int i = 0; i < size; i++) {
+					next[i] = ((i > 0) ? 2 * current[i - 1] : 0) - previous[i];
+				}
+				double[] oldPrevious = previous;
+				previous = current;
+				current = next;
+				next = oldPrevious;
+			}
+			for (int i = 0; i <= k; i++) {
+				powersOfT[i] += chebyshev[k] * current[i];
+			}
+		}
+		double scale = 1 / this.halfWidth;
+		double shift = -this.center / this.halfWidth;
+		double[] powersOfX = new double[size];
+		for (int k = size - 1; k >= 0; k--) {
+			for (int i = size - 1; i >= 0; i--) {
+				powersOfX[i] = powersOfX[i] * shift + ((i > 0) ? powersOfX[i - 1] * scale : 0);
+			}
+			powersOfX[0] += powersOfT[k];
+		}
+		return powersOfX;
+	}
+
+}
@@ -0,0 +1,475 @@
+/* Copyright (C) 2015 Zach Ohara
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.zachohara.pictographer.core;
+
+import java.awt.EventQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The {@code RenderMetrics} class contains static methods for measuring where the time
+ * goes when a graph is drawn. Each {@link Stage} keeps a histogram of how long it took,
+ * and how much of that time was spent on the event dispatch thread; each
+ * {@link Counter} keeps a running total.
+ * <p>
+ * Metrics are only collected when they are turned on, with {@link #setEnabled(boolean)}
+ * or by setting the system property {@value #ENABLED_PROPERTY} to {@code true}.
+ * Independently of that, every stage is committed as a {@code Stage} event to Java
+ * Flight Recorder whenever a recording is running, timed by the recorder itself. When
+ * metrics are turned off and no recording is running, each measurement costs only a
+ * check of a field and of the recorder.
+ * 
+ * @author Zach Ohara
+ */
+public final class RenderMetrics {
+
+	/**
+	 * The {@code RenderMetrics} class should not be instantiable.
+	 */
+	private RenderMetrics() {
+
+	}
+
+	/**
+	 * The system property that turns metrics on when it is {@code true}.
+	 */
+	public static final String ENABLED_PROPERTY = "pictographer.metrics";
+
+	/**
+	 * Whether metrics are being collected.
+	 */
+	private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+	/**
+	 * Whether the metrics will be printed when the program exits.
+	 */
+	private static boolean dumpOnExit = false;
+
+	/**
+	 * The histogram of the time taken by each stage, indexed by ordinal.
+	 */
+	private static final Histogram[] HISTOGRAMS = new Histogram[Stage.values().length];
+
+	/**
+	 * The nanoseconds that each stage spent on the event dispatch thread, indexed by
+	 * ordinal.
+	 */
+	private static final LongAdder[] EVENT_THREAD_NANOS =
+			new LongAdder[Stage.values().length];
+
+	/**
+	 * The total of each counter, indexed by ordinal.
+	 */
+	private static final LongAdder[] COUNTERS = new LongAdder[Counter.values().length];
+
+	static {
+		for (int i = 0; i < HISTOGRAMS.length; i++) {
+			HISTOGRAMS[i] = new Histogram();
+			EVENT_THREAD_NANOS[i] = new LongAdder();
+		}
+		for (int i = 0; i < COUNTERS.length; i++) {
+			COUNTERS[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Determines if metrics are being collected.
+	 * 
+	 * @return {@code true} if metrics are turned on; {@code false} otherwise.
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Turns metrics on or off. Metrics that were already collected are kept.
+	 * 
+	 * @param enable {@code true} to turn metrics on; {@code false} to turn them off.
+	 */
+	public static void setEnabled(boolean enable) {
+		enabled = enable;
+	}
+
+	/**
+	 * Marks the start of a stage.
+	 * 
+	 * @return the measurement of the stage, to be passed to
+	 * {@link #end(Stage, StageEvent, long)}, or {@code null} if metrics are turned off
+	 * and no flight recording is running.
+	 */
+	public static StageEvent start() {
+		if (!enabled && !new StageEvent().isEnabled())
+			return null;
+		StageEvent event = new StageEvent();
+		event.startNanos = enabled ? System.nanoTime() : 0;
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Marks the end of a stage. How long it took is recorded if metrics were turned on
+	 * when it started, and the flight recorder event is committed if a recording wants
+	 * it.
+	 * 
+	 * @param stage the stage that ended.
+	 * @param event the value returned by {@link #start()} when the stage started.
+	 * @param items the number of items that the stage handled, such as samples or points,
+	 * which is only recorded in the flight recorder event.
+	 */
+	public static void end(Stage stage, StageEvent event, long items) {
+		if (event == null)
+			return;
+		event.end();
+		boolean eventThread = EventQueue.isDispatchThread();
+		if (event.startNanos != 0) {
+			long elapsed = System.nanoTime() - event.startNanos;
+			HISTOGRAMS[stage.ordinal()].record(elapsed);
+			if (eventThread)
+				EVENT_THREAD_NANOS[stage.ordinal()].add(elapsed);
+		}
+		if (event.shouldCommit()) {
+			event.stage = stage.name();
+			event.items = items;
+			event.onEventThread = eventThread;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Adds to the total of a counter.
+	 * 
+	 * @param counter the counter to add to.
+	 * @param amount the amount to add.
+	 */
+	public static void count(Counter counter, long amount) {
+		if (enabled)
+			COUNTERS[counter.ordinal()].add(amount);
+	}
+
+	/**
+	 * Gets the histogram of the time taken by a stage.
+	 * 
+	 * @param stage the stage.
+	 * @return the histogram of the stage.
+	 */
+	public static Histogram getHistogram(Stage stage) {
+		return HISTOGRAMS[stage.ordinal()];
+	}
+
+	/**
+	 * Gets the time that a stage spent on the event dispatch thread.
+	 * 
+	 * @param stage the stage.
+	 * @return the total time, in nanoseconds.
+	 */
+	public static long getEventThreadNanos(Stage stage) {
+		return EVENT_THREAD_NANOS[stage.ordinal()].sum();
+	}
+
+	/**
+	 * Gets the total of a counter.
+	 * 
+	 * @param counter the counter.
+	 * @return the total of the counter.
+	 */
+	public static long getCount(Counter counter) {
+		return COUNTERS[counter.ordinal()].sum();
+	}
+
+	/**
+	 * Discards every metric that has been collected.
+	 */
+	public static void reset() {
+		for (int i = 0; i < HISTOGRAMS.length; i++) {
+			HISTOGRAMS[i].reset();
+			EVENT_THREAD_NANOS[i].reset();
+		}
+		for (LongAdder counter : COUNTERS) {
+			counter.reset();
+		}
+	}
+
+	/**
+	 * Gets a summary of every metric, with one line for each stage and each counter.
+	 * 
+	 * @return the summary.
+	 */
+	public static String getSummary() {
+		StringBuilder summary = new StringBuilder();
+		for (Stage stage : Stage.values()) {
+			Histogram h = getHistogram(stage);
+			summary.append(String.format("%-9s n=%d total=%.1fms mean=%.3fms p50<%.3fms "
+					+ "p99<%.3fms max=%.3fms edt=%.1fms%n", stage.name().toLowerCase(),
+					h.getCount(), h.getTotalNanos() / 1e6, h.getMeanNanos() / 1e6,
+					h.getPercentileNanos(0.5) / 1e6, h.getPercentileNanos(0.99) / 1e6,
+					h.getMaxNanos() / 1e6, getEventThreadNanos(stage) / 1e6));
+		}
+		for (Counter counter : Counter.values()) {
+			summary.append(String.format("%-9s %d%n", counter.name().toLowerCase(),
+					getCount(counter)));
+		}
+		return summary.toString();
+	}
+
+	/**
+	 * Prints the summary of every metric to the standard error stream when the program
+	 * exits. Calling this method more than once has no further effect.
+	 */
+	public static synchronized void dumpOnExit() {
+		if (dumpOnExit)
+			return;
+		dumpOnExit = true;
+		Runtime.getRuntime().addShutdownHook(new Thread("Render metrics") {
+			@Override
+			public void run() {
+				System.err.print(getSummary());
+			}
+		});
+	}
+
+	/**
+	 * The stages of drawing a graph that are timed.
+	 */
+	public enum Stage {
+
+		/**
+		 * Decoding the background image.
+		 */
+		DECODE,
+
+		/**
+		 * Parsing the function.
+		 */
+		PARSE,
+
+		/**
+		 * Evaluating the function and converting it into pixel coordinates.
+		 */
+		EVALUATE,
+
+		/**
+		 * Drawing the graph on to the screen or an image.
+		 */
+		PAINT
+
+	}
+
+	/**
+	 * The totals that are counted.
+	 */
+	public enum Counter {
+
+		/**
+		 * The number of times a polynomial or its derivative was evaluated.
+		 */
+		SAMPLES,
+
+		/**
+		 * The number of points that were drawn.
+		 */
+		POINTS,
+
+		/**
+		 * The number of sampled points that were left out because they could not be
+		 * seen.
+		 */
+		CULLED
+
+	}
+
+	/**
+	 * A {@code Histogram} records durations in buckets that are powers of two
+	 * nanoseconds wide, so that recording a duration never allocates memory and is safe
+	 * from any thread.
+	 */
+	public static final class Histogram {
+
+		/**
+		 * The number of durations in each bucket. Bucket {@code i} holds durations of at
+		 * least {@code 2^(i-1)} and less than {@code 2^i} nanoseconds.
+		 */
+		private final AtomicLongArray buckets;
+
+		/**
+		 * The number of recorded durations.
+		 */
+		private final LongAdder count;
+
+		/**
+		 * The sum of the recorded durations.
+		 */
+		private final LongAdder total;
+
+		/**
+		 * The longest recorded duration.
+		 */
+		private final AtomicLong max;
+
+		/**
+		 * Constructs a new, empty {@code Histogram}.
+		 */
+		private Histogram() {
+			this.buckets = new AtomicLongArray(Long.SIZE + 1);
+			this.count = new LongAdder();
+			this.total = new LongAdder();
+			this.max = new AtomicLong();
+		}
+
+		/**
+		 * Records a duration.
+		 * 
+		 * @param nanos the duration, in nanoseconds.
+		 */
+		private void record(long nanos) {
+			nanos = Math.max(0, nanos);
+			this.buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(nanos));
+			this.count.increment();
+			this.total.add(nanos);
+			long old = this.max.get();
+			while (nanos > old && !this.max.compareAndSet(old, nanos)) {
+				old = this.max.get();
+			}
+		}
+
+		/**
+		 * Discards every recorded duration.
+		 */
+		private void reset() {
+			for (int i = 0; i < this.buckets.length(); i++) {
+				this.buckets.set(i, 0);
+			}
+			this.count.reset();
+			this.total.reset();
+			this.max.set(0);
+		}
+
+		/**
+		 * Gets the number of recorded durations.
+		 * 
+		 * @return the number of durations.
+		 */
+		public long getCount() {
+			return this.count.sum();
+		}
+
+		/**
+		 * Gets the sum of the recorded durations.
+		 * 
+		 * @return the total, in nanoseconds.
+		 */
+		public long getTotalNanos() {
+			return this.total.sum();
+		}
+
+		/**
+		 * Gets the mean of the recorded durations.
+		 * 
+		 * @return the mean, in nanoseconds, or {@code 0} if there are none.
+		 */
+		public double getMeanNanos() {
+			long n = this.getCount();
+			return (n == 0) ? 0 : (double)(this.getTotalNanos()) / n;
+		}
+
+		/**
+		 * Gets the longest recorded duration.
+		 * 
+		 * @return the longest duration, in nanoseconds.
+		 */
+		public long getMaxNanos() {
+			return this.max.get();
+		}
+
+		/**
+		 * Gets an upper bound on a percentile of the recorded durations: the top of the
+		 * bucket that the percentile falls in.
+		 * 
+		 * @param fraction the percentile, between {@code 0} and {@code 1}.
+		 * @return the upper bound, in nanoseconds, or {@code 0} if there are no durations.
+		 */
+		public long getPercentileNanos(double fraction) {
+			long n = 0;
+			for (int i = 0; i < this.buckets.length(); i++) {
+				n += this.buckets.get(i);
+			}
+			long rank = (long)(Math.ceil(fraction * n));
+			long seen = 0;
+			for (int i = 0; i < this.buckets.length(); i++) {
+				seen += this.buckets.get(i);
+				if (seen >= rank && seen > 0) {
+					long top = (i >= Long.SIZE - 1) ? Long.MAX_VALUE : 1L << i;
+					return Math.min(this.getMaxNanos(), top);
+				}
+			}
+			return 0;
+		}
+
+	}
+
+	/**
+	 * A {@code StageEvent} is the measurement of one timed stage, and is also its flight
+	 * recorder event. The recorder times the event itself, from {@link #start()} to
+	 * {@link #end(Stage, StageEvent, long)}.
+	 */
+	@Name("io.github.zachohara.pictographer.Stage")
+	@Label("Render Stage")
+	@Category("Pictographer")
+	@Description("A stage of drawing a graph")
+	public static final class StageEvent extends Event {
+
+		/**
+		 * The time the stage started, for the histograms, or {@code 0} if metrics were
+		 * turned off. This is not part of the flight recorder event.
+		 */
+		private transient long startNanos;
+
+		/**
+		 * The name of the stage.
+		 */
+		@Label("Stage")
+		private String stage;
+
+		/**
+		 * The number of items that the stage handled.
+		 */
+		@Label("Items")
+		private long items;
+
+		/**
+		 * Whether the stage ran on the event dispatch thread.
+		 */
+		@Label("On Event Dispatch Thread")
+		private boolean onEventThread;
+
+		/**
+		 * Constructs a new {@code StageEvent}. Events are only made by
+		 * {@link RenderMetrics#start()}.
+		 */
+		private StageEvent() {
+
+		}
+
+	}
+
+}
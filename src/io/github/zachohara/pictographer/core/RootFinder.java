@@ -0,0 +1,249 @@
+/* Copyright (C) 2015 Zach Ohara
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.github.zachohara.pictographer.core;
+
+import java.util.Arrays;
+
+/**
+ * The {@code RootFinder} class contains static methods for finding the x-intercepts and
+ * the local extrema of a {@code Polynomial} within a range of x-coordinates.
+ * <p>
+ * Roots are isolated with the chain of derivatives of the polynomial. By Rolle's
+ * theorem, a function has at most one root between two neighbouring roots of its
+ * derivative, and is monotonic there. So the roots of each derivative are found from
+ * the roots of the next one, starting from the last derivative that is a straight line.
+ * Each root is then refined with Newton steps, falling back to bisection whenever a
+ * step would leave the interval that brackets the root. A root that is also a root of
+ * the derivative, where the function touches zero without crossing it, is found as a
+ * root of the derivative at which the function is zero to within rounding error.
+ * <p>
+ * Polynomials that have fractional exponents, or a degree higher than
+ * {@link #MAX_ISOLATION_DEGREE}, are instead scanned at
+ * {@link #SCAN_SEGMENTS} evenly spaced x-coordinates, and only the roots where the
+ * function changes sign between two of them are found.
+ * 
+ * @author Zach Ohara
+ */
+public final class RootFinder {
+
+	/**
+	 * The {@code RootFinder} class should not be instantiable.
+	 */
+	private RootFinder() {
+
+	}
+
+	/**
+	 * The highest degree of a polynomial whose roots will be isolated with its chain of
+	 * derivatives. The cost of isolating roots grows with the square of the degree.
+	 */
+	public static final int MAX_ISOLATION_DEGREE = 256;
+
+	/**
+	 * The number of segments that a polynomial is scanned at when its roots cannot be
+	 * isolated with its chain of derivatives.
+	 */
+	public static final int SCAN_SEGMENTS = 1024;
+
+	/**
+	 * The largest number of steps that will be taken to refine a single root.
+	 */
+	public static final int MAX_ITERATIONS = 128;
+
+	/**
+	 * Finds every real root of a polynomial between two x-coordinates, inclusive. A
+	 * root of higher multiplicity is only included once.
+	 * 
+	 * @param function the polynomial to find the roots of.
+	 * @param xMin one end of the range to search.
+	 * @param xMax the other end of the range to search.
+	 * @return the roots in increasing order, or an empty array if there are none, if
+	 * every coefficient of the polynomial is zero, or if either end of the range is not
+	 * finite.
+	 */
+	public static double[] findRoots(Polynomial function, double xMin, double xMax) {
+		double a = Math.min(xMin, xMax);
+		double b = Math.max(xMin, xMax);
+		if (function.getDistinctTermCount() == 0 || !isFinite(a) || !isFinite(b))
+			return new double[0];
+		double degree = function.getDegree();
+		if (!function.isIntegral() || degree > MAX_ISOLATION_DEGREE) {
+			double[] samples = new double[SCAN_SEGMENTS - 1];
+			for (int i = 0; i < samples.length; i++) {
+				samples[i] = a + (b - a) * (i + 1) / SCAN_SEGMENTS;
+			}
+			return isolate(function, a, b, samples);
+		}
+		Polynomial[] chain = new Polynomial[(int)(degree)];
+		for (int k = 0; k < chain.length; k++) {
+			chain[k] = (k == 0) ? function : chain[k - 1].derivative();
+		}
+		double[] roots = new double[0];
+		for (int k = chain.length - 1; k >= 0; k--) {
+			roots = isolate(chain[k], a, b, roots);
+		}
+		return roots;
+	}
+
+	/**
+	 * Finds every local minimum and maximum of a polynomial between two x-coordinates.
+	 * These are the roots of its derivative at which the derivative changes sign; a
+	 * root of the derivative where the polynomial only levels out is not included, and
+	 * neither is a root at either end of the range.
+	 * 
+	 * @param function the polynomial to find the extrema of.
+	 * @param xMin one end of the range to search.
+	 * @param xMax the other end of the range to search.
+	 * @return the x-coordinates of the extrema in increasing order, or an empty array if
+	 * there are none.
+	 */
+	public static double[] findExtrema(Polynomial function, double xMin, double xMax) {
+		Polynomial slope = function.derivative();
+		if (slope == null)
+			return new double[0];
+		double a = Math.min(xMin, xMax);
+		double b = Math.max(xMin, xMax);
+		double[] critical = findRoots(slope, a, b);
+		double[] extrema = new double[critical.length];
+		int count = 0;
+		for (int i = 0; i < critical.length; i++) {
+			double left = (i == 0) ? a : critical[i - 1];
+			double right = (i == critical.length - 1) ? b : critical[i + 1];
+			double before = slope.valueAt(left + (critical[i] - left) / 2);
+			double after = slope.valueAt(critical[i] + (right - critical[i]) / 2);
+			if ((before < 0 && after > 0) || (before > 0 && after < 0))
+				extrema[count++] = critical[i];
+		}
+		return Arrays.copyOf(extrema, count);
+	}
+
+	/**
+	 * Finds the roots of a function between two x-coordinates, given a sorted set of
+	 * x-coordinates between them that split the range into intervals. The function must
+	 * have at most one root, or change sign at most once, in each of those intervals.
+	 * <p>
+	 * A change of sign across a pole is not a root. So an interval is skipped if the
+	 * function has a negative exponent and the interval contains zero, and a refined
+	 * root is dropped unless the function is smaller there than at both ends of its
+	 * interval.
+	 * 
+	 * @param function the function to find the roots of.
+	 * @param a the lower end of the range.
+	 * @param b the upper end of the range.
+	 * @param splits the x-coordinates that split the range, in increasing order.
+	 * @return the roots in increasing order.
+	 */
+	private static double[] isolate(Polynomial function, double a, double b,
+			double[] splits) {
+		int n = splits.length + 2;
+		double[] points = new double[n];
+		points[0] = a;
+		System.arraycopy(splits, 0, points, 1, splits.length);
+		points[n - 1] = b;
+		double[] values = new double[n];
+		boolean[] zero = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			values[i] = function.valueAt(points[i]);
+			zero[i] = isZero(function, points[i], values[i]);
+		}
+		boolean pole = function.getLowestExponent() < 0;
+		double[] roots = new double[2 * n];
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			if (zero[i]) {
+				if (count == 0 || roots[count - 1] != points[i])
+					roots[count++] = points[i];
+			} else if (i < n - 1 && !zero[i + 1] && ((values[i] < 0 && values[i + 1] > 0)
+					|| (values[i] > 0 && values[i + 1] < 0))) {
+				if (pole && points[i] <= 0 && points[i + 1] >= 0)
+					continue;
+				double root = refine(function, points[i], points[i + 1], values[i]);
+				double value = function.valueAt(root);
+				if (isZero(function, root, value) || (Math.abs(value) < Math.abs(values[i])
+						&& Math.abs(value) < Math.abs(values[i + 1])))
+					roots[count++] = root;
+			}
+		}
+		return Arrays.copyOf(roots, count);
+	}
+
+	/**
+	 * Determines if a value of a function cannot be told apart from zero, because it is
+	 * no larger than the rounding error that evaluating the function may have made. A
+	 * value whose rounding error cannot be bounded, because the function overflowed, is
+	 * never zero.
+	 * 
+	 * @param function the function that was evaluated.
+	 * @param x the x-coordinate that the function was evaluated at.
+	 * @param value the value of the function at that x-coordinate.
+	 * @return {@code true} if the value is zero to within rounding error; {@code false}
+	 * otherwise.
+	 */
+	private static boolean isZero(Polynomial function, double x, double value) {
+		double bound = (function.getDegree() + 1) * Math.ulp(1.0) * function.magnitudeAt(x);
+		return isFinite(bound) && Math.abs(value) <= bound;
+	}
+
+	/**
+	 * Refines the root of a function between two x-coordinates, where the function has
+	 * opposite signs at each end. Newton steps are taken while they stay between the
+	 * bounds and converge quickly enough; otherwise the bounds are bisected.
+	 * 
+	 * @param function the function to find the root of.
+	 * @param lo the lower bound of the root.
+	 * @param hi the upper bound of the root.
+	 * @param fLo the value of the function at the lower bound.
+	 * @return the x-coordinate of the root.
+	 */
+	private static double refine(Polynomial function, double lo, double hi, double fLo) {
+		boolean rising = fLo < 0;
+		double[] values = new double[3];
+		double x = lo + (hi - lo) / 2;
+		double step = hi - lo;
+		for (int i = 0; i < MAX_ITERATIONS; i++) {
+			function.valueAndDerivativesAt(x, values);
+			if (values[0] == 0)
+				return x;
+			if ((values[0] < 0) == rising)
+				lo = x;
+			else
+				hi = x;
+			double next = x - values[0] / values[1];
+			if (!(next > lo && next < hi)
+					|| Math.abs(2 * values[0]) > Math.abs(step * values[1])) {
+				next = lo + (hi - lo) / 2;
+			}
+			step = next - x;
+			if (Math.abs(step) <= Math.ulp(x) || next == lo || next == hi)
+				return next;
+			x = next;
+		}
+		return x;
+	}
+
+	/**
+	 * Determines if a number is finite.
+	 * 
+	 * @param x the number to check.
+	 * @return {@code true} if the number is neither infinite nor {@code NaN}.
+	 */
+	private static boolean isFinite(double x) {
+		return !Double.isInfinite(x) && !Double.isNaN(x);
+	}
+
+}
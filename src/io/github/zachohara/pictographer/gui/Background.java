@@ -0,0 +1,404 @@
+/* Copyright (C) 2015 Zach Ohara
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package io.github.zachohara.pictographer.gui;
+
+import io.github.zachohara.pictographer.ImagePyramid;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JPanel;
+import javax.swing.Timer;
+
+/**
+ * A {@code Background} is a {@code JPanel} that draws an image stretched to fill the
+ * whole panel. Other components, such as the {@code Graph}, can be added on top of it.
+ * <p>
+ * The image is not scaled every time the panel is painted. Instead, a copy of the image
+ * is scaled once to the size of the panel, with high-quality interpolation, and that
+ * copy is drawn from then on. While the panel is being resized, the old copy is
+ * stretched to fit, which is fast; a new copy is only scaled once the size has stayed
+ * the same for a moment.
+ * <p>
+ * The panel can also show only a part of the image, called the viewport, stretched to
+ * fill it. The viewport is measured in pixels of the source image, which may be much
+ * larger than the image that is kept in memory. The viewport is scaled in the same way:
+ * a copy of the part of the image in the viewport is scaled once the viewport and the
+ * size have stayed the same for a moment, and until then the copies that were already
+ * scaled are stretched to cover it. If an {@code ImagePyramid} of the source is given,
+ * the tiles that cover the viewport are drawn over the image at the level of detail
+ * that suits the zoom, as soon as they have been built and read into memory. Tiles are
+ * never read from disk while painting.
+ * 
+ * @author Zach Ohara
+ */
+public class Background extends JPanel {
+
+	/**
+	 * The image at its original size.
+	 */
+	private final BufferedImage image;
+
+	/**
+	 * The tiles of the source image at every level of detail, or {@code null} if the
+	 * image is the source at full resolution.
+	 */
+	private final ImagePyramid pyramid;
+
+	/**
+	 * The part of the source image that fills this panel, in pixels of the source image.
+	 */
+	private final Rectangle2D.Double viewport;
+
+	/**
+	 * The copy of the whole image that was scaled to the size of this panel when it was
+	 * last settled, or {@code null} if no copy has been scaled yet.
+	 */
+	private BufferedImage scaled;
+
+	/**
+	 * The copy of the part of the image in the viewport that was scaled to the size of
+	 * this panel when it was last settled, or {@code null} if the whole image was shown.
+	 */
+	private BufferedImage viewScaled;
+
+	/**
+	 * The viewport that {@code viewScaled} was scaled from, in pixels of the source image.
+	 */
+	private final Rectangle2D.Double viewScaledViewport;
+
+	/**
+	 * The timer that scales new copies of the image once this panel has stopped being
+	 * resized or zoomed.
+	 */
+	private final Timer settleTimer;
+
+
+	/**
+	 * The number of milliseconds after the last change to the size or the viewport of
+	 * this panel before a new copy of the image is scaled.
+	 */
+	private static final int SETTLE_DELAY = 150;
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructs a new {@code Background} that draws the given image. The preferred size
+	 * of the panel is the size of the image.
+	 * 
+	 * @param image the image to draw.
+	 */
+	public Background(BufferedImage image) {
+		this(image, null);
+	}
+
+	/**
+	 * Constructs a new {@code Background} that draws the given image, with finer detail
+	 * from the given pyramid when the viewport is zoomed in. The preferred size of the
+	 * panel is the size of the image, and the viewport is the whole source image.
+	 * 
+	 * @param image the image to draw.
+	 * @param pyramid the tiles of the source image, or {@code null} if the image is the
+	 * source at full resolution.
+	 */
+	public Background(BufferedImage image, ImagePyramid pyramid) {
+		super(new BorderLayout());
+		this.image = image;
+		this.pyramid = pyramid;
+		this.scaled = null;
+		this.viewScaled = null;
+		this.viewport = new Rectangle2D.Double(0, 0, this.getSourceWidth(),
+				this.getSourceHeight());
+		this.viewScaledViewport = new Rectangle2D.Double();
+		if (pyramid != null) {
+			pyramid.setTileListener(new Runnable() {
+				@Override
+				public void run() {
+					Background.this.repaint();
+				}
+			});
+		}
+		this.setPreferredSize(new Dimension(image.getWidth(), image.getHeight()));
+		this.settleTimer = new Timer(SETTLE_DELAY, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				Background.this.rescale();
+			}
+		});
+		this.settleTimer.setRepeats(false);
+		this.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				Background.this.settleTimer.restart();
+			}
+		});
+	}
+
+	/**
+	 * Gets the width of the source image.
+	 * 
+	 * @return the width of the source image, in pixels.
+	 */
+	public int getSourceWidth() {
+		return (this.pyramid != null) ? this.pyramid.getWidth() : this.image.getWidth();
+	}
+
+	/**
+	 * Gets the height of the source image.
+	 * 
+	 * @return the height of the source image, in pixels.
+	 */
+	public int getSourceHeight() {
+		return (this.pyramid != null) ? this.pyramid.getHeight() : this.image.getHeight();
+	}
+
+	/**
+	 * Gets the part of the source image that fills this panel.
+	 * 
+	 * @return a copy of the viewport, in pixels of the source image.
+	 */
+	public Rectangle2D getViewport() {
+		return (Rectangle2D)(this.viewport.clone());
+	}
+
+	/**
+	 * Sets the part of the source image that fills this panel, and repaints the panel. A
+	 * new copy of the viewport is scaled once it has stayed the same for a moment.
+	 * 
+	 * @param viewport the new viewport, in pixels of the source image.
+	 */
+	public void setViewport(Rectangle2D viewport) {
+		this.viewport.setRect(viewport);
+		this.settleTimer.restart();
+		this.repaint();
+	}
+
+	/**
+	 * Determines if the viewport is the whole source image.
+	 * 
+	 * @return {@code true} if the whole image fills this panel; {@code false} otherwise.
+	 */
+	private boolean isFullView() {
+		return this.viewport.x == 0 && this.viewport.y == 0
+				&& this.viewport.width == this.getSourceWidth()
+				&& this.viewport.height == this.getSourceHeight();
+	}
+
+	/**
+	 * Draws the viewport of the image. The scaled copy of the whole image is drawn first,
+	 * stretched to the viewport and to the size of this panel if either has changed since
+	 * the copy was scaled. When only part of the image is shown, the scaled copy of the
+	 * viewport is drawn over it in the same way, followed by any finer tiles of it. The
+	 * image itself is never scaled while painting, except for the first time.
+	 */
+	@Override
+	public void paintComponent(Graphics g) {
+		super.paintComponent(g);
+		int width = this.getWidth();
+		int height = this.getHeight();
+		if (width <= 0 || height <= 0)
+			return;
+		Graphics2D g2 = (Graphics2D)(g);
+		if (this.scaled == null) {
+			this.scaled = this.scaleImage(width, height, new Rectangle2D.Double(0, 0,
+					this.getSourceWidth(), this.getSourceHeight()));
+		}
+		this.paintCopy(g2, this.scaled, 0, 0, this.getSourceWidth(), this.getSourceHeight(),
+				width, height);
+		if (this.isFullView())
+			return;
+		if (this.viewScaled != null) {
+			this.paintCopy(g2, this.viewScaled, this.viewScaledViewport.x,
+					this.viewScaledViewport.y, this.viewScaledViewport.width,
+					this.viewScaledViewport.height, width, height);
+		}
+		if (this.pyramid != null)
+			this.paintTiles(g2, width, height);
+	}
+
+	/**
+	 * Draws the part of a scaled copy of the image that lies in the viewport. The copy is
+	 * drawn as it is if it covers exactly the viewport at the size of this panel, and is
+	 * stretched into place otherwise; only its pixels in the viewport are drawn, so the
+	 * cost does not depend on how far the viewport is zoomed in.
+	 * 
+	 * @param g the graphics context to draw with.
+	 * @param copy the scaled copy to draw.
+	 * @param x the left edge of the part of the source image that the copy covers.
+	 * @param y the top edge of the part of the source image that the copy covers.
+	 * @param w the width of the part of the source image that the copy covers.
+	 * @param h the height of the part of the source image that the copy covers.
+	 * @param width the width of this panel.
+	 * @param height the height of this panel.
+	 */
+	private void paintCopy(Graphics2D g, BufferedImage copy, double x, double y, double w,
+			double h, int width, int height) {
+		if (copy.getWidth() == width && copy.getHeight() == height && x == this.viewport.x
+				&& y == this.viewport.y && w == this.viewport.width
+				&& h == this.viewport.height) {
+			g.drawImage(copy, 0, 0, null);
+			return;
+		}
+		double left = Math.max(x, this.viewport.x);
+		double top = Math.max(y, this.viewport.y);
+		double right = Math.min(x + w, this.viewport.getMaxX());
+		double bottom = Math.min(y + h, this.viewport.getMaxY());
+		if (left >= right || top >= bottom)
+			return;
+		double xScale = width / this.viewport.width;
+		double yScale = height / this.viewport.height;
+		double xCopyScale = copy.getWidth() / w;
+		double yCopyScale = copy.getHeight() / h;
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+				RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(copy, (int)(Math.round((left - this.viewport.x) * xScale)),
+				(int)(Math.round((top - this.viewport.y) * yScale)),
+				(int)(Math.round((right - this.viewport.x) * xScale)),
+				(int)(Math.round((bottom - this.viewport.y) * yScale)),
+				(int)(Math.floor((left - x) * xCopyScale)),
+				(int)(Math.floor((top - y) * yCopyScale)),
+				(int)(Math.ceil((right - x) * xCopyScale)),
+				(int)(Math.ceil((bottom - y) * yCopyScale)), null);
+	}
+
+	/**
+	 * Draws the tiles of the pyramid that cover the viewport, at the coarsest level that
+	 * still has at least one pixel for each pixel of this panel. Nothing is drawn if the
+	 * image in memory is already that detailed. Tiles that are not in memory yet are
+	 * requested and left out; this panel is repainted once they have been read.
+	 * 
+	 * @param g the graphics context to draw with.
+	 * @param width the width of this panel.
+	 * @param height the height of this panel.
+	 */
+	private void paintTiles(Graphics2D g, int width, int height) {
+		double sourcePerPixel = Math.min(this.viewport.width / width,
+				this.viewport.height / height);
+		int level = 0;
+		while (level + 1 < this.pyramid.getLevelCount() && (2 << level) <= sourcePerPixel) {
+			level++;
+		}
+		if ((1 << level) >= (double)(this.getSourceWidth()) / this.image.getWidth())
+			return;
+		double xScale = width / this.viewport.width;
+		double yScale = height / this.viewport.height;
+		int span = ImagePyramid.TILE_SIZE << level;
+		int firstColumn = Math.max(0, (int)(this.viewport.x / span));
+		int lastColumn = Math.min(this.pyramid.getColumnCount(level) - 1,
+				(int)(this.viewport.getMaxX() / span));
+		int firstRow = Math.max(0, (int)(this.viewport.y / span));
+		int lastRow = Math.min(this.pyramid.getRowCount(level) - 1,
+				(int)(this.viewport.getMaxY() / span));
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				BufferedImage tile = this.pyramid.requestTile(level, column, row);
+				if (tile == null)
+					continue;
+				double left = column * span - this.viewport.x;
+				double top = row * span - this.viewport.y;
+				g.drawImage(tile, (int)(Math.round(left * xScale)),
+						(int)(Math.round(top * yScale)),
+						(int)(Math.round((left + (tile.getWidth() << level)) * xScale)),
+						(int)(Math.round((top + (tile.getHeight() << level)) * yScale)),
+						0, 0, tile.getWidth(), tile.getHeight(), null);
+			}
+		}
+	}
+
+	/**
+	 * Scales new copies of the whole image and of the viewport to the current size of
+	 * this panel, if they have changed, and repaints the panel.
+	 */
+	private void rescale() {
+		int width = this.getWidth();
+		int height = this.getHeight();
+		if (width <= 0 || height <= 0)
+			return;
+		boolean changed = false;
+		if (this.scaled == null || this.scaled.getWidth() != width
+				|| this.scaled.getHeight() != height) {
+			this.scaled = this.scaleImage(width, height, new Rectangle2D.Double(0, 0,
+					this.getSourceWidth(), this.getSourceHeight()));
+			changed = true;
+		}
+		if (this.isFullView()) {
+			this.viewScaled = null;
+		} else if (this.viewScaled == null || this.viewScaled.getWidth() != width
+				|| this.viewScaled.getHeight() != height
+				|| !this.viewScaledViewport.equals(this.viewport)) {
+			this.viewScaled = this.scaleImage(width, height, this.viewport);
+			this.viewScaledViewport.setRect(this.viewport);
+			changed = true;
+		}
+		if (changed)
+			this.repaint();
+	}
+
+	/**
+	 * Scales a copy of part of the image to the given size. The copy is in the format of
+	 * the screen, if possible, so that drawing it does not need any conversion.
+	 * 
+	 * @param width the width of the copy, in pixels.
+	 * @param height the height of the copy, in pixels.
+	 * @param region the part of the image to copy, in pixels of the source image.
+	 * @return the scaled copy of the image, or the image itself if the whole image is
+	 * copied and it is already the given size.
+	 */
+	private BufferedImage scaleImage(int width, int height, Rectangle2D region) {
+		boolean whole = region.getX() == 0 && region.getY() == 0
+				&& region.getWidth() == this.getSourceWidth()
+				&& region.getHeight() == this.getSourceHeight();
+		if (whole && width == this.image.getWidth() && height == this.image.getHeight())
+			return this.image;
+		int transparency = this.image.getColorModel().hasAlpha() ? Transparency.TRANSLUCENT
+				: Transparency.OPAQUE;
+		GraphicsConfiguration config = this.getGraphicsConfiguration();
+		BufferedImage copy;
+		if (config != null) {
+			copy = config.createCompatibleImage(width, height, transparency);
+		} else {
+			copy = new BufferedImage(width, height, (transparency == Transparency.OPAQUE)
+					? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+		}
+		Graphics2D g = copy.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+				RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+		g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		AffineTransform transform = AffineTransform.getScaleInstance(
+				width / region.getWidth(), height / region.getHeight());
+		transform.translate(-region.getX(), -region.getY());
+		transform.scale((double)(this.getSourceWidth()) / this.image.getWidth(),
+				(double)(this.getSourceHeight()) / this.image.getHeight());
+		g.drawImage(this.image, transform, null);
+		g.dispose();
+		return copy;
+	}
+
+}
@@ -16,37 +16,144 @@
 
 package io.github.zachohara.pictographer.gui;
 
+import io.github.zachohara.pictographer.core.GraphPlotter;
+import io.github.zachohara.pictographer.core.RenderMetrics;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics;
-import java.awt.Point;
-import java.util.ArrayList;
-import java.util.List;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
 
 import javax.swing.JPanel;
 
 /**
  * A {@code Graph} object is a {@code JPanel} that will draw a given set of points on to
- * the screen.
+ * the screen. The points are joined into one or more polylines, which are grouped into
+ * one or more curves that are each drawn in their own color. A separate set of markers,
+ * such as points that a curve was fitted to, can be drawn on top of the curves, along
+ * with a set of annotations, such as the x-intercepts and the local extrema of the
+ * curves, which are replaced and cleared together with the curves.
  * 
  * @author Zach Ohara
  */
 public class Graph extends JPanel {
 
 	/**
-	 * The list of points that should be drawn on in graph.
+	 * The x-coordinates of the points that should be drawn on in graph.
+	 */
+	private int[] xPoints;
+
+	/**
+	 * The y-coordinates of the points that should be drawn on in graph.
+	 */
+	private int[] yPoints;
+
+	/**
+	 * The number of points that should be drawn. Only the first {@code pointCount}
+	 * elements of the coordinate arrays are used.
+	 */
+	private int pointCount;
+
+	/**
+	 * The index of the first point of each polyline.
+	 */
+	private int[] polylineStarts;
+
+	/**
+	 * The number of polylines. Only the first {@code polylineCount} elements of the
+	 * polyline array are used.
+	 */
+	private int polylineCount;
+
+	/**
+	 * The index of the first polyline of each curve.
+	 */
+	private int[] curveStarts;
+
+	/**
+	 * The number of curves. Only the first {@code curveCount} elements of the curve
+	 * array are used.
+	 */
+	private int curveCount;
+
+	/**
+	 * The x-coordinates of the markers.
+	 */
+	private int[] markerXs;
+
+	/**
+	 * The y-coordinates of the markers.
+	 */
+	private int[] markerYs;
+
+	/**
+	 * The number of markers. Only the first {@code markerCount} elements of the marker
+	 * arrays are used.
+	 */
+	private int markerCount;
+
+	/**
+	 * The x-coordinates of the annotations.
+	 */
+	private int[] annotationXs;
+
+	/**
+	 * The y-coordinates of the annotations.
+	 */
+	private int[] annotationYs;
+
+	/**
+	 * The number of annotations. Only the first {@code annotationCount} elements of the
+	 * annotation arrays are used.
+	 */
+	private int annotationCount;
+
+	/**
+	 * The translucent image that the points were last drawn on to, or {@code null} if
+	 * they have never been drawn. Painting this graph only copies this image to the
+	 * screen, unless the points have changed. If the graph has been resized since the
+	 * image was drawn, the image is stretched to fit until new points are set.
+	 */
+	private BufferedImage overlay;
+
+	/**
+	 * Whether the points have changed since the overlay was drawn.
+	 */
+	private boolean overlayStale;
+
+
+	/**
+	 * The initial length of the coordinate arrays.
+	 */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * The radius of a marker, in pixels.
 	 */
-	private final List<Point> pointList;
+	private static final int MARKER_RADIUS = 4;
 
+	/**
+	 * The color that the inside of each marker is filled with.
+	 */
+	private static final Color MARKER_FILL = Color.WHITE;
 
 	/**
-	 * The thickness of the points that should be drawn.
+	 * The color of the outline of each marker.
 	 */
-	private static final int LINE_THICKNESS = 5;
+	private static final Color MARKER_OUTLINE = Color.BLACK;
 
 	/**
-	 * The color of the points.
+	 * The radius of an annotation, in pixels.
 	 */
-	private static final Color LINE_COLOR = Color.BLUE;
+	private static final int ANNOTATION_RADIUS = 3;
+
+	/**
+	 * The color that the inside of each annotation is filled with.
+	 */
+	private static final Color ANNOTATION_FILL = Color.YELLOW;
 
 	private static final long serialVersionUID = 1L;
 
@@ -55,7 +162,21 @@ public class Graph extends JPanel {
 	 */
 	public Graph() {
 		super();
-		this.pointList = new ArrayList<Point>();
+		this.xPoints = new int[INITIAL_CAPACITY];
+		this.yPoints = new int[INITIAL_CAPACITY];
+		this.pointCount = 0;
+		this.polylineStarts = new int[1];
+		this.polylineCount = 0;
+		this.curveStarts = new int[1];
+		this.curveCount = 0;
+		this.markerXs = new int[0];
+		this.markerYs = new int[0];
+		this.markerCount = 0;
+		this.annotationXs = new int[0];
+		this.annotationYs = new int[0];
+		this.annotationCount = 0;
+		this.overlay = null;
+		this.overlayStale = true;
 		this.setOpaque(false);
 	}
 
@@ -65,29 +186,215 @@ public class Graph extends JPanel {
 	@Override
 	public void paintComponent(Graphics g) {
 		super.paintComponent(g);
-		g.setColor(LINE_COLOR);
-		for (Point p : this.pointList) {
-			g.fillOval(p.x + (LINE_THICKNESS / 2), p.y + (LINE_THICKNESS / 2),
-					LINE_THICKNESS, LINE_THICKNESS);
+		if (this.getWidth() <= 0 || this.getHeight() <= 0)
+			return;
+		RenderMetrics.StageEvent start = RenderMetrics.start();
+		int drawn = 0;
+		if (this.overlay == null || this.overlayStale) {
+			this.overlay = this.renderOverlay(this.overlay);
+			this.overlayStale = false;
+			drawn = this.pointCount;
+			RenderMetrics.count(RenderMetrics.Counter.POINTS, drawn);
 		}
+		if (this.overlay.getWidth() == this.getWidth()
+				&& this.overlay.getHeight() == this.getHeight())
+			g.drawImage(this.overlay, 0, 0, null);
+		else
+			g.drawImage(this.overlay, 0, 0, this.getWidth(), this.getHeight(), null);
+		RenderMetrics.end(RenderMetrics.Stage.PAINT, start, drawn);
 	}
 
 	/**
-	 * Adds a point with the given coordinates to this graph.
+	 * Draws all the curves, then the annotations, and then the markers, on to a
+	 * translucent image that is the same size as this graph. The old image is cleared and
+	 * drawn on again if it is still the right size; otherwise, a new image is made.
+	 * 
+	 * @param old the image that was drawn on last time, or {@code null}.
+	 * @return the image of the polylines.
+	 */
+	private BufferedImage renderOverlay(BufferedImage old) {
+		BufferedImage image = old;
+		if (image == null || image.getWidth() != this.getWidth()
+				|| image.getHeight() != this.getHeight()) {
+			image = new BufferedImage(this.getWidth(), this.getHeight(),
+					BufferedImage.TYPE_INT_ARGB);
+		}
+		Graphics2D g = image.createGraphics();
+		if (image == old) {
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, 0, image.getWidth(), image.getHeight());
+			g.setComposite(AlphaComposite.SrcOver);
+		}
+		GraphPlotter.drawCurves(g, this.xPoints, this.yPoints, this.pointCount,
+				this.polylineStarts, this.polylineCount, this.curveStarts, this.curveCount);
+		g.setStroke(new BasicStroke());
+		for (int i = 0; i < this.annotationCount; i++) {
+			int x = this.annotationXs[i] - ANNOTATION_RADIUS;
+			int y = this.annotationYs[i] - ANNOTATION_RADIUS;
+			g.setColor(ANNOTATION_FILL);
+			g.fillRect(x, y, 2 * ANNOTATION_RADIUS, 2 * ANNOTATION_RADIUS);
+			g.setColor(MARKER_OUTLINE);
+			g.drawRect(x, y, 2 * ANNOTATION_RADIUS, 2 * ANNOTATION_RADIUS);
+		}
+		for (int i = 0; i < this.markerCount; i++) {
+			int x = this.markerXs[i] - MARKER_RADIUS;
+			int y = this.markerYs[i] - MARKER_RADIUS;
+			g.setColor(MARKER_FILL);
+			g.fillOval(x, y, 2 * MARKER_RADIUS, 2 * MARKER_RADIUS);
+			g.setColor(MARKER_OUTLINE);
+			g.drawOval(x, y, 2 * MARKER_RADIUS, 2 * MARKER_RADIUS);
+		}
+		g.dispose();
+		return image;
+	}
+
+	/**
+	 * Adds a point with the given coordinates to the end of the last polyline in this
+	 * graph.
 	 * 
 	 * @param x the x-coordinate of the new point.
 	 * @param y the y-coordinate of the new point.
 	 */
 	public void addPoint(int x, int y) {
-		this.pointList.add(new Point(x, y));
+		this.ensureCapacity(this.pointCount + 1);
+		if (this.polylineCount == 0) {
+			this.polylineStarts[0] = 0;
+			this.polylineCount = 1;
+			this.curveStarts[0] = 0;
+			this.curveCount = 1;
+		}
+		this.xPoints[this.pointCount] = x;
+		this.yPoints[this.pointCount] = y;
+		this.pointCount++;
+		this.overlayStale = true;
+		this.repaint();
+	}
+
+	/**
+	 * Replaces all the points in this graph with a single polyline through the first
+	 * {@code n} points of the given coordinate arrays, and repaints the graph once. The
+	 * arrays are copied, so they can be reused by the caller.
+	 * 
+	 * @param xs the x-coordinates of the new points.
+	 * @param ys the y-coordinates of the new points.
+	 * @param n the number of points to use from the arrays.
+	 */
+	public void setPoints(int[] xs, int[] ys, int n) {
+		this.setPolylines(xs, ys, n, new int[] {0}, (n > 0) ? 1 : 0);
+	}
+
+	/**
+	 * Replaces all the points in this graph with a set of polylines, and repaints the
+	 * graph once. Polyline {@code i} runs from point {@code starts[i]} up to, but not
+	 * including, point {@code starts[i + 1]}; the last polyline runs up to point
+	 * {@code n}. The arrays are copied, so they can be reused by the caller.
+	 * 
+	 * @param xs the x-coordinates of the new points.
+	 * @param ys the y-coordinates of the new points.
+	 * @param n the number of points to use from the arrays.
+	 * @param starts the index of the first point of each polyline.
+	 * @param polylines the number of polylines to use from the array of starts.
+	 */
+	public void setPolylines(int[] xs, int[] ys, int n, int[] starts, int polylines) {
+		this.setCurves(xs, ys, n, starts, polylines, new int[] {0}, 1);
+	}
+
+	/**
+	 * Replaces all the points in this graph with a set of curves, and repaints the graph
+	 * once. The polylines are laid out as in
+	 * {@link #setPolylines(int[], int[], int, int[], int)}, and curve {@code c} is made
+	 * of the polylines from {@code curveStarts[c]} up to, but not including,
+	 * {@code curveStarts[c + 1]}. The arrays are copied, so they can be reused by the
+	 * caller.
+	 * 
+	 * @param xs the x-coordinates of the new points.
+	 * @param ys the y-coordinates of the new points.
+	 * @param n the number of points to use from the arrays.
+	 * @param starts the index of the first point of each polyline.
+	 * @param polylines the number of polylines to use from the array of starts.
+	 * @param curveStarts the index of the first polyline of each curve.
+	 * @param curves the number of curves to use from the array of curve starts.
+	 */
+	public void setCurves(int[] xs, int[] ys, int n, int[] starts, int polylines,
+			int[] curveStarts, int curves) {
+		this.ensureCapacity(n);
+		System.arraycopy(xs, 0, this.xPoints, 0, n);
+		System.arraycopy(ys, 0, this.yPoints, 0, n);
+		this.pointCount = n;
+		if (this.polylineStarts.length < polylines) {
+			this.polylineStarts = new int[Math.max(polylines,
+					this.polylineStarts.length * 2)];
+		}
+		System.arraycopy(starts, 0, this.polylineStarts, 0, polylines);
+		this.polylineCount = polylines;
+		if (this.curveStarts.length < curves)
+			this.curveStarts = new int[curves];
+		System.arraycopy(curveStarts, 0, this.curveStarts, 0, curves);
+		this.curveCount = curves;
+		this.overlayStale = true;
 		this.repaint();
 	}
 
 	/**
-	 * Clears all the points from this graph.
+	 * Replaces the markers that are drawn on top of the curves, and repaints the graph
+	 * once. The arrays are copied, so they can be reused by the caller.
+	 * 
+	 * @param xs the x-coordinates of the markers.
+	 * @param ys the y-coordinates of the markers.
+	 * @param n the number of markers to use from the arrays.
+	 */
+	public void setMarkers(int[] xs, int[] ys, int n) {
+		if (n == 0 && this.markerCount == 0)
+			return;
+		this.markerXs = Arrays.copyOf(xs, n);
+		this.markerYs = Arrays.copyOf(ys, n);
+		this.markerCount = n;
+		this.overlayStale = true;
+		this.repaint();
+	}
+
+	/**
+	 * Replaces the annotations that are drawn over the curves, such as their
+	 * x-intercepts and local extrema, and repaints the graph once. The arrays are copied,
+	 * so they can be reused by the caller.
+	 * 
+	 * @param xs the x-coordinates of the annotations.
+	 * @param ys the y-coordinates of the annotations.
+	 * @param n the number of annotations to use from the arrays.
+	 */
+	public void setAnnotations(int[] xs, int[] ys, int n) {
+		if (n == 0 && this.annotationCount == 0)
+			return;
+		this.annotationXs = Arrays.copyOf(xs, n);
+		this.annotationYs = Arrays.copyOf(ys, n);
+		this.annotationCount = n;
+		this.overlayStale = true;
+		this.repaint();
+	}
+
+	/**
+	 * Clears all the points and annotations from this graph. The markers are kept.
 	 */
 	public void clear() {
-		this.pointList.clear();
+		this.pointCount = 0;
+		this.polylineCount = 0;
+		this.curveCount = 0;
+		this.annotationCount = 0;
+		this.overlayStale = true;
+	}
+
+	/**
+	 * Grows the coordinate arrays, if needed, so that they can hold at least the given
+	 * number of points.
+	 * 
+	 * @param capacity the number of points that the arrays must be able to hold.
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > this.xPoints.length) {
+			int newLength = Math.max(capacity, this.xPoints.length * 2);
+			this.xPoints = Arrays.copyOf(this.xPoints, newLength);
+			this.yPoints = Arrays.copyOf(this.yPoints, newLength);
+		}
 	}
 
 }
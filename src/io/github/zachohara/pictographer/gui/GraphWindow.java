@@ -16,20 +16,47 @@
 
 package io.github.zachohara.pictographer.gui;
 
+import io.github.zachohara.pictographer.ImagePyramid;
 import io.github.zachohara.pictographer.OptionState;
+import io.github.zachohara.pictographer.core.FunctionParser;
+import io.github.zachohara.pictographer.core.GraphPlotter;
 import io.github.zachohara.pictographer.core.Polynomial;
+import io.github.zachohara.pictographer.core.PolynomialFitter;
 
+import java.awt.BorderLayout;
+import java.awt.Point;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.List;
 
-import javax.swing.ImageIcon;
-import javax.swing.JComponent;
 import javax.swing.JFrame;
-import javax.swing.JLabel;
-import javax.swing.JLayeredPane;
+import javax.swing.SwingUtilities;
 
 /**
  * A {@code GraphWindow} is a {@code JFrame} window that, in simple terms, contains a
  * background image and a graph of a function that should be drawn on top of the graph.
+ * <p>
+ * The window can be resized. The background image is stretched to fill the window, and
+ * the graph is plotted again at the new size, so that it stays sharp.
+ * <p>
+ * Turning the mouse wheel over the window zooms in or out around the mouse, and
+ * dragging pans the zoomed view. The graph is plotted for only the part of the image
+ * that is in view. If an {@code ImagePyramid} of the source image is given, zooming in
+ * shows the image in finer detail than the image that was loaded for the window.
+ * <p>
+ * The x-intercepts and local extrema of each function that are in view are marked on
+ * the graph, and are found again whenever the graph is plotted.
+ * <p>
+ * While fitting is turned on, clicking on the window adds a point at the graph
+ * coordinates under the mouse, and right-clicking removes the last point. After each
+ * change, the polynomial that best fits the points is published as the
+ * {@value #FIT_PROPERTY} property of this window, as a function string.
  * 
  * @author Zach Ohara
  */
@@ -42,21 +69,52 @@ public class GraphWindow extends JFrame {
 
 
 	/**
-	 * The {@code JLayeredPane} object that manages the overlaying of the graph over the
-	 * background image.
+	 * The panel that draws the background image, with the graph on top of it.
 	 */
-	private JLayeredPane layerManager;
+	private Background background;
 
 	/**
 	 * The background image.
 	 */
 	private BufferedImage image;
 
+	/**
+	 * The tiles of the source image at every level of detail, or {@code null} if the
+	 * background image is the source at full resolution.
+	 */
+	private ImagePyramid pyramid;
+
+	/**
+	 * The part of the source image that is in view, in pixels of the source image.
+	 */
+	private Rectangle2D.Double viewport;
+
+	/**
+	 * The point where the mouse was pressed to start dragging the view.
+	 */
+	private Point dragStart;
+
+	/**
+	 * The viewport when the mouse was pressed to start dragging the view.
+	 */
+	private Rectangle2D.Double dragViewport;
+
+	/**
+	 * The fitter that clicked points are added to, or {@code null} if fitting is turned
+	 * off.
+	 */
+	private PolynomialFitter fitter;
+
 	/**
 	 * The graph to draw over the image.
 	 */
 	private Graph graph;
 
+	/**
+	 * The scheduler that plots the graph on a background thread.
+	 */
+	private RenderScheduler scheduler;
+
 
 	/**
 	 * The title of the window.
@@ -64,11 +122,21 @@ public class GraphWindow extends JFrame {
 	private static final String WINDOW_TITLE = "Pictographer";
 
 	/**
-	 * The correction factor that is required for the graph to line up properly with the
-	 * window. The format is {width correction, height correction}. These numbers are
-	 * not scale factors, but pixel offsets.
+	 * The name of the bound property that holds the function string of the polynomial
+	 * that was last fitted to the clicked points.
+	 */
+	public static final String FIT_PROPERTY = "fittedFunction";
+
+	/**
+	 * The factor that one notch of the mouse wheel zooms in or out by.
+	 */
+	private static final double ZOOM_STEP = 1.25;
+
+	/**
+	 * The largest number of pixels of the window that one pixel of the source image may
+	 * be zoomed to fill, in each direction.
 	 */
-	private static final int[] WINDOW_BOUNDARY_CORRECTION = {0, 30};
+	private static final double MAX_MAGNIFICATION = 8;
 
 	private static final long serialVersionUID = 1L;
 
@@ -81,137 +149,355 @@ public class GraphWindow extends JFrame {
 	 * window.
 	 */
 	public GraphWindow(BufferedImage bImg, OptionState optionState) {
+		this(bImg, null, optionState);
+	}
+
+	/**
+	 * Constructs a new {@code GraphWindow} with the given background image, pyramid of
+	 * the source image, and option information.
+	 * 
+	 * @param bImg the background image to create this window with.
+	 * @param pyramid the tiles of the source image at every level of detail, or
+	 * {@code null} if the background image is the source at full resolution.
+	 * @param optionState the option information for the options pane attached to this
+	 * window.
+	 */
+	public GraphWindow(BufferedImage bImg, ImagePyramid pyramid, OptionState optionState) {
 		super();
 		this.image = bImg;
+		this.pyramid = pyramid;
 		this.options = optionState;
-		this.initializeLayeredPane();
+		this.initializeBackground();
 		this.initializeGraph();
-		this.setImage(bImg);
+		this.initializeNavigation();
 		this.initializeWindow();
 	}
 
 	/**
-	 * Redraws the graph after a change to the graph settings.
+	 * Redraws the graph after a change to the graph settings. Every valid function is
+	 * drawn; if there are none, the graph is cleared instead.
 	 */
 	public void update() {
-		this.drawGraph(this.options.getFunction());
+		this.updateMarkers();
+		if (this.options.getFunctions().isEmpty()) {
+			this.scheduler.clear();
+			return;
+		}
+		this.drawGraphs(this.options.getFunctions());
 	}
 
 	/**
-	 * Draws a graph of the given polynomial function.
+	 * Draws a graph of the given polynomial function. The graph is plotted on a
+	 * background thread, and appears once it has finished, unless another graph is
+	 * drawn before then.
 	 * 
 	 * @param function the polynomial function to graph.
 	 */
 	public void drawGraph(Polynomial function) {
-		this.graph.clear();
-		double[] imageWidth = {0, imageWidth()};
-		double[] imageHeight = {0, this.imageHeight()};
-		for (int xPix = 0; xPix < imageWidth(); xPix++) {
-			double x = scaleToRange(xPix, imageWidth, this.options.getxRange());
-			double y = function.valueAt(x);
-			int yPix = (int)(scaleToRange(y, this.options.getyRange(), imageHeight));
-			this.plotGraphPoint(xPix, yPix);
+		this.drawGraphs(Collections.singletonList(function));
+	}
+
+	/**
+	 * Draws the graphs of several polynomial functions at once, each in its own color.
+	 * The functions are plotted together in one pass on a background thread, and appear
+	 * once they have all finished, unless other graphs are drawn before then.
+	 * 
+	 * @param functions the polynomial functions to graph.
+	 */
+	public void drawGraphs(List<Polynomial> functions) {
+		this.scheduler.schedule(functions, this.getVisibleXRange(),
+				this.getVisibleYRange(), this.imageWidth(), this.imageHeight(),
+				this.options.isCompensated());
+	}
+
+	/**
+	 * Gets the x-boundaries of the part of the graph that is in view.
+	 * 
+	 * @return the visible x-boundaries.
+	 */
+	public double[] getVisibleXRange() {
+		double[] xRange = this.options.getxRange();
+		double[] sourceRange = {0, this.background.getSourceWidth()};
+		return new double[] {GraphPlotter.scaleToRange(this.viewport.x, sourceRange, xRange),
+				GraphPlotter.scaleToRange(this.viewport.getMaxX(), sourceRange, xRange)};
+	}
+
+	/**
+	 * Gets the y-boundaries of the part of the graph that is in view. The top of the
+	 * image is the maximum y-boundary.
+	 * 
+	 * @return the visible y-boundaries.
+	 */
+	public double[] getVisibleYRange() {
+		double[] yRange = this.options.getyRange();
+		int sourceHeight = this.background.getSourceHeight();
+		double[] sourceRange = {0, sourceHeight};
+		return new double[] {
+				GraphPlotter.scaleToRange(sourceHeight - this.viewport.getMaxY(), sourceRange,
+						yRange),
+				GraphPlotter.scaleToRange(sourceHeight - this.viewport.y, sourceRange,
+						yRange)};
+	}
+
+	/**
+	 * Turns fitting a polynomial to clicked points on or off. Turning fitting on starts
+	 * with no points; turning it off removes them.
+	 * 
+	 * @param fitting whether clicks should add points to fit.
+	 * @param degree the degree of the polynomial to fit, from {@code 0} to
+	 * {@value PolynomialFitter#MAX_DEGREE}.
+	 */
+	public void setFitting(boolean fitting, int degree) {
+		this.fitter = null;
+		if (fitting) {
+			double[] xRange = this.options.getxRange();
+			try {
+				this.fitter = new PolynomialFitter(degree, xRange[0], xRange[1]);
+			} catch (IllegalArgumentException e) {
+				this.fitter = new PolynomialFitter(degree, -1, 1);
+			}
 		}
+		this.updateMarkers();
 	}
 
 	/**
-	 * Gets the (corrected) width of the background image.
+	 * Changes the degree of the polynomial that is fitted to the clicked points, and
+	 * publishes the new fit.
 	 * 
-	 * @return the width of the image.
+	 * @param degree the degree of the polynomial to fit, from {@code 0} to
+	 * {@value PolynomialFitter#MAX_DEGREE}.
 	 */
-	public int imageWidth() {
-		return this.image.getWidth() - WINDOW_BOUNDARY_CORRECTION[0];
+	public void setFitDegree(int degree) {
+		if (this.fitter == null)
+			return;
+		this.fitter.setDegree(degree);
+		this.publishFit();
+	}
+
+	/**
+	 * Removes every clicked point, without changing the function.
+	 */
+	public void clearFitPoints() {
+		if (this.fitter == null)
+			return;
+		this.fitter.clear();
+		this.updateMarkers();
+	}
+
+	/**
+	 * Publishes the polynomial that best fits the clicked points as the
+	 * {@value #FIT_PROPERTY} property, if there are any points.
+	 */
+	private void publishFit() {
+		this.updateMarkers();
+		if (this.fitter.getPointCount() == 0)
+			return;
+		this.firePropertyChange(FIT_PROPERTY, null,
+				FunctionParser.formatPolynomial(this.fitter.getCoefficients()));
+	}
+
+	/**
+	 * Marks each clicked point on the graph, at its position in the current view.
+	 */
+	private void updateMarkers() {
+		int n = (this.fitter != null) ? this.fitter.getPointCount() : 0;
+		int[] xs = new int[n];
+		int[] ys = new int[n];
+		double[] xRange = this.getVisibleXRange();
+		double[] yRange = this.getVisibleYRange();
+		double[] widthRange = {0, this.imageWidth()};
+		double[] heightRange = {0, this.imageHeight()};
+		for (int i = 0; i < n; i++) {
+			xs[i] = (int)(GraphPlotter.scaleToRange(this.fitter.getX(i), xRange, widthRange));
+			ys[i] = this.imageHeight() - (int)(GraphPlotter.scaleToRange(this.fitter.getY(i),
+					yRange, heightRange));
+		}
+		this.graph.setMarkers(xs, ys, n);
 	}
 
 	/**
-	 * Gets the (corrected) height of the background image.
+	 * Adds a point to the fit at the graph coordinates of a point in the window, found
+	 * with the inverse of the mapping that the graph is plotted with, and publishes the
+	 * new fit.
 	 * 
-	 * @return the height of the image.
+	 * @param x the x-coordinate of the point, in pixels of the window.
+	 * @param y the y-coordinate of the point, in pixels of the window.
 	 */
-	public int imageHeight() {
-		return this.image.getHeight() - WINDOW_BOUNDARY_CORRECTION[1];
+	private void addFitPoint(int x, int y) {
+		double[] widthRange = {0, this.imageWidth()};
+		double[] heightRange = {0, this.imageHeight()};
+		this.fitter.addPoint(
+				GraphPlotter.scaleToRange(x, widthRange, this.getVisibleXRange()),
+				GraphPlotter.scaleToRange(this.imageHeight() - y, heightRange,
+						this.getVisibleYRange()));
+		this.publishFit();
 	}
 
 	/**
-	 * Plots a given point (in pixel coordinates) on the graph.
+	 * Zooms the view in or out, keeping the given point of the window over the same
+	 * point of the image. The view never shows more than the whole image, or fewer
+	 * source pixels than the window can magnify.
 	 * 
-	 * @param x the x-coordinate of the new point.
-	 * @param y the y-coordinate of the new point.
+	 * @param factor the factor to zoom by; above {@code 1} zooms in.
+	 * @param x the x-coordinate of the point to zoom around, in pixels of the window.
+	 * @param y the y-coordinate of the point to zoom around, in pixels of the window.
 	 */
-	private void plotGraphPoint(int x, int y) {
-		y = this.imageHeight() - y;
-		this.graph.addPoint(x, y);
+	public void zoom(double factor, int x, int y) {
+		int sourceWidth = this.background.getSourceWidth();
+		double minWidth = Math.min(sourceWidth, this.imageWidth() / MAX_MAGNIFICATION);
+		double width = Math.max(minWidth, Math.min(sourceWidth, this.viewport.width / factor));
+		double scale = width / this.viewport.width;
+		double xAnchor = this.viewport.x + x * this.viewport.width / this.imageWidth();
+		double yAnchor = this.viewport.y + y * this.viewport.height / this.imageHeight();
+		this.setViewport(xAnchor - (xAnchor - this.viewport.x) * scale,
+				yAnchor - (yAnchor - this.viewport.y) * scale, width,
+				this.viewport.height * scale);
 	}
 
 	/**
-	 * Sets the background image for this window, and adjusts the size of the window
-	 * accordint to the size of the image.
+	 * Moves the viewport to the given position and size, keeping it within the image,
+	 * and plots the graph again for the new view.
 	 * 
-	 * @param image the new background image.
+	 * @param x the left edge of the viewport, in pixels of the source image.
+	 * @param y the top edge of the viewport, in pixels of the source image.
+	 * @param width the width of the viewport, in pixels of the source image.
+	 * @param height the height of the viewport, in pixels of the source image.
 	 */
-	private void setImage(BufferedImage image) {
-		this.image = image;
-		this.setSize(this.image.getWidth(), this.image.getHeight());
-		this.setLocationRelativeTo(null);
-		JComponent compImage = new JLabel(new ImageIcon(image));
-		compImage.setSize(this.image.getWidth(), this.image.getHeight());
-		compImage.setLocation(0, 0);
-		this.layerManager.add(compImage, 2);
+	private void setViewport(double x, double y, double width, double height) {
+		int sourceWidth = this.background.getSourceWidth();
+		int sourceHeight = this.background.getSourceHeight();
+		if (width >= sourceWidth || height >= sourceHeight) {
+			this.viewport.setRect(0, 0, sourceWidth, sourceHeight);
+		} else {
+			this.viewport.setRect(Math.max(0, Math.min(sourceWidth - width, x)),
+					Math.max(0, Math.min(sourceHeight - height, y)), width, height);
+		}
+		this.background.setViewport(this.viewport);
+		this.update();
 	}
 
 	/**
-	 * Initializes the underlying {@code JFrame} for this window.
+	 * Gets the width of the graph, in pixels. Before the window has been laid out, this
+	 * is the width of the background image.
+	 * 
+	 * @return the width of the graph.
+	 */
+	public int imageWidth() {
+		int width = this.graph.getWidth();
+		return (width > 0) ? width : this.image.getWidth();
+	}
+
+	/**
+	 * Gets the height of the graph, in pixels. Before the window has been laid out, this
+	 * is the height of the background image.
+	 * 
+	 * @return the height of the graph.
+	 */
+	public int imageHeight() {
+		int height = this.graph.getHeight();
+		return (height > 0) ? height : this.image.getHeight();
+	}
+
+	/**
+	 * Disposes of this window, and closes the pyramid of the background image, which
+	 * deletes its tile file.
+	 */
+	@Override
+	public void dispose() {
+		super.dispose();
+		if (this.pyramid != null)
+			this.pyramid.close();
+	}
+
+	/**
+	 * Initializes the underlying {@code JFrame} for this window, and sizes it so that
+	 * the background image is shown at its original size.
 	 */
 	private void initializeWindow() {
 		this.setTitle(WINDOW_TITLE);
-		this.setLayout(null);
-		this.setLocationRelativeTo(null);
 		this.setResizable(true);
 		this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		this.pack();
+		this.setLocationRelativeTo(null);
 	}
 
 	/**
-	 * Initializes the {@code JLayeredPane} that facilitates the overlay of the graph over
-	 * the background image.
+	 * Initializes the {@code Background} that draws the background image, and fills the
+	 * window with it.
 	 */
-	private void initializeLayeredPane() {
-		this.layerManager = new JLayeredPane();
-		this.layerManager.setSize(this.image.getWidth(), this.image.getHeight());
-		this.layerManager.setLocation(0,0);
-		this.add(this.layerManager);
+	private void initializeBackground() {
+		this.background = new Background(this.image, this.pyramid);
+		this.viewport = new Rectangle2D.Double(0, 0, this.background.getSourceWidth(),
+				this.background.getSourceHeight());
+		this.setContentPane(this.background);
 	}
 
 	/**
-	 * Initializes the {@code Graph} for this window.
+	 * Initializes the {@code Graph} for this window, on top of the background image. The
+	 * graph is plotted again whenever it is resized.
 	 */
 	private void initializeGraph() {
 		this.graph = new Graph();
-		this.graph.setLocation(0, 0);
-		this.graph.setSize(this.image.getWidth(), this.image.getHeight());
-		this.layerManager.add(this.graph, 1);
+		this.background.add(this.graph, BorderLayout.CENTER);
+		this.scheduler = new RenderScheduler(this.graph);
+		this.graph.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				GraphWindow.this.update();
+			}
+		});
 	}
 
 	/**
-	 * Scales a number within some range to a corresponding position relative
-	 * to another range. If the absolute value of the number is below the
-	 * input range, 0 will be returned. If the absolute value of the number is
-	 * above the input range, the maximum value of the output range, but with
-	 * the same polarity as the number, will be returned. 
-	 * 
-	 * @param num the number to be scaled.
-	 * @param inputRange a two-element array representing the lowest and
-	 * and highest values, respectively, of the range to be scaled from.
-	 * @param outputRange a two-element array representing the lowest and
-	 * and highest values, respectively, of the range to be scaled to.
-	 * @return the number, scaled to the same relative position within the
-	 * output range.
-	 */
-	private static double scaleToRange(double num, double[] inputRange, double[] outputRange) {
-		double inputDifference = inputRange[1] - inputRange[0];
-		double outputDifference = outputRange[1] - outputRange[0];
-		double posInRange = (num - inputRange[0]) / inputDifference;
-		double posOutRange = outputRange[0] + (posInRange * outputDifference);
-		return posOutRange;
+	 * Initializes the mouse controls for zooming with the wheel, panning by dragging,
+	 * and adding or removing points to fit by clicking.
+	 */
+	private void initializeNavigation() {
+		MouseAdapter navigation = new MouseAdapter() {
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				GraphWindow.this.zoom(Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()),
+						e.getX(), e.getY());
+			}
+
+			@Override
+			public void mousePressed(MouseEvent e) {
+				GraphWindow.this.dragStart = e.getPoint();
+				GraphWindow.this.dragViewport = (Rectangle2D.Double)(GraphWindow.this.viewport
+						.clone());
+			}
+
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				GraphWindow window = GraphWindow.this;
+				Rectangle2D.Double start = window.dragViewport;
+				if (start == null)
+					return;
+				window.setViewport(start.x - (e.getX() - window.dragStart.x) * start.width
+						/ window.imageWidth(), start.y - (e.getY() - window.dragStart.y)
+						* start.height / window.imageHeight(), start.width, start.height);
+			}
+
+			@Override
+			public void mouseReleased(MouseEvent e) {
+				GraphWindow.this.dragViewport = null;
+			}
+
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				if (GraphWindow.this.fitter == null)
+					return;
+				if (SwingUtilities.isLeftMouseButton(e)) {
+					GraphWindow.this.addFitPoint(e.getX(), e.getY());
+				} else if (SwingUtilities.isRightMouseButton(e)) {
+					GraphWindow.this.fitter.removeLastPoint();
+					GraphWindow.this.publishFit();
+				}
+			}
+		};
+		this.graph.addMouseListener(navigation);
+		this.graph.addMouseMotionListener(navigation);
+		this.graph.addMouseWheelListener(navigation);
 	}
 
 }
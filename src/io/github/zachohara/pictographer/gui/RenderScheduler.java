@@ -0,0 +1,254 @@
+/* Copyright (C) 2015 Zach Ohara
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.zachohara.pictographer.gui;
+
+import io.github.zachohara.pictographer.core.GraphPlotter;
+import io.github.zachohara.pictographer.core.Polynomial;
+import io.github.zachohara.pictographer.core.RootFinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * A {@code RenderScheduler} plots graphs on a background thread, so that the event
+ * dispatch thread never waits for a graph to be plotted, no matter how large the image
+ * is.
+ * <p>
+ * Every request for a render supersedes the ones before it. A render that is still
+ * running when a newer one is requested stops as soon as it notices, and a render that
+ * finishes after a newer one was requested is thrown away, so only the most recently
+ * requested graph is ever given to the {@code Graph}.
+ * <p>
+ * The x-intercepts and local extrema of each function that are in view are found on
+ * the render thread as well, once the curves have been plotted, and are given to the
+ * {@code Graph} as annotations along with the curves.
+ * 
+ * @author Zach Ohara
+ */
+public class RenderScheduler {
+
+	/**
+	 * The graph that finished renders are given to.
+	 */
+	private final Graph graph;
+
+	/**
+	 * The plotter that is used by the render thread. It is never used by any other
+	 * thread.
+	 */
+	private final GraphPlotter plotter;
+
+	/**
+	 * The x-coordinates, in pixels, of the annotations that were found by the last
+	 * render. This array is never used by any thread but the render thread.
+	 */
+	private int[] annotationXs;
+
+	/**
+	 * The y-coordinates, in pixels, of the annotations that were found by the last
+	 * render. This array is never used by any thread but the render thread.
+	 */
+	private int[] annotationYs;
+
+	/**
+	 * The number of annotations that were found by the last render.
+	 */
+	private int annotationCount;
+
+	/**
+	 * The single thread that renders run on.
+	 */
+	private final ExecutorService renderThread;
+
+	/**
+	 * The number of the most recent request. A render is stale once this number has
+	 * changed since it was requested.
+	 */
+	private final AtomicLong generation;
+
+	/**
+	 * The initial length of the annotation arrays.
+	 */
+	private static final int INITIAL_ANNOTATION_CAPACITY = 16;
+
+	/**
+	 * Constructs a new {@code RenderScheduler} that gives finished renders to the given
+	 * graph.
+	 * 
+	 * @param graph the graph that finished renders are given to.
+	 */
+	public RenderScheduler(Graph graph) {
+		this.graph = graph;
+		this.plotter = new GraphPlotter();
+		this.annotationXs = new int[INITIAL_ANNOTATION_CAPACITY];
+		this.annotationYs = new int[INITIAL_ANNOTATION_CAPACITY];
+		this.annotationCount = 0;
+		this.generation = new AtomicLong();
+		this.renderThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Graph renderer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Requests a render of the given functions, which supersedes any earlier request.
+	 * This method returns immediately; the graph is updated on the event dispatch thread
+	 * once the render has finished.
+	 * 
+	 * @param functions the polynomial functions to graph, each as its own curve.
+	 * @param xRange the x-boundaries of the graph.
+	 * @param yRange the y-boundaries of the graph.
+	 * @param width the width of the image, in pixels.
+	 * @param height the height of the image, in pixels.
+	 * @param compensated whether the functions should be evaluated with compensated
+	 * arithmetic.
+	 */
+	public void schedule(List<Polynomial> functions, double[] xRange, double[] yRange,
+			final int width, final int height, final boolean compensated) {
+		final long request = this.generation.incrementAndGet();
+		final List<Polynomial> f = new ArrayList<Polynomial>(functions);
+		final double[] x = Arrays.copyOf(xRange, 2);
+		final double[] y = Arrays.copyOf(yRange, 2);
+		this.renderThread.execute(new Runnable() {
+			@Override
+			public void run() {
+				RenderScheduler.this.render(request, f, x, y, width, height, compensated);
+			}
+		});
+	}
+
+	/**
+	 * Cancels any render that has been requested, and clears the graph.
+	 */
+	public void clear() {
+		this.generation.incrementAndGet();
+		this.graph.clear();
+		this.graph.repaint();
+	}
+
+	/**
+	 * Renders a function on the render thread, along with its x-intercepts and local
+	 * extrema, and publishes the result to the graph unless a newer render was requested
+	 * in the meantime.
+	 * 
+	 * @param request the number of the request for this render.
+	 * @param functions the polynomial functions to graph.
+	 * @param xRange the x-boundaries of the graph.
+	 * @param yRange the y-boundaries of the graph.
+	 * @param width the width of the image, in pixels.
+	 * @param height the height of the image, in pixels.
+	 * @param compensated whether the functions should be evaluated with compensated
+	 * arithmetic.
+	 */
+	private void render(final long request, List<Polynomial> functions, double[] xRange,
+			double[] yRange, int width, int height, boolean compensated) {
+		BooleanSupplier stale = new BooleanSupplier() {
+			@Override
+			public boolean getAsBoolean() {
+				return RenderScheduler.this.generation.get() != request;
+			}
+		};
+		this.plotter.setCompensated(compensated);
+		if (stale.getAsBoolean()
+				|| !this.plotter.plot(functions, xRange, yRange, width, height, stale))
+			return;
+		final int points = this.plotter.getPointCount();
+		final int polylines = this.plotter.getPolylineCount();
+		final int curves = this.plotter.getCurveCount();
+		final int[] xs = Arrays.copyOf(this.plotter.getXPixels(), points);
+		final int[] ys = Arrays.copyOf(this.plotter.getYPixels(), points);
+		final int[] starts = Arrays.copyOf(this.plotter.getPolylineStarts(), polylines);
+		final int[] curveStarts = Arrays.copyOf(this.plotter.getCurveStarts(), curves);
+		if (!this.annotate(functions, xRange, yRange, width, height, stale))
+			return;
+		final int annotations = this.annotationCount;
+		final int[] annotationXs = Arrays.copyOf(this.annotationXs, annotations);
+		final int[] annotationYs = Arrays.copyOf(this.annotationYs, annotations);
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				if (RenderScheduler.this.generation.get() == request) {
+					RenderScheduler.this.graph.setCurves(xs, ys, points, starts, polylines,
+							curveStarts, curves);
+					RenderScheduler.this.graph.setAnnotations(annotationXs, annotationYs,
+							annotations);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Finds the x-intercepts and local extrema of each function in the x-range, and
+	 * keeps the pixel coordinates of those that are also in the y-range as the
+	 * annotations of this render.
+	 * 
+	 * @param functions the polynomial functions to annotate.
+	 * @param xRange the x-boundaries of the graph.
+	 * @param yRange the y-boundaries of the graph.
+	 * @param width the width of the image, in pixels.
+	 * @param height the height of the image, in pixels.
+	 * @param stale whether a newer render has been requested.
+	 * @return {@code true} if every function was annotated; {@code false} if a newer
+	 * render was requested first.
+	 */
+	private boolean annotate(List<Polynomial> functions, double[] xRange, double[] yRange,
+			int width, int height, BooleanSupplier stale) {
+		double yMin = Math.min(yRange[0], yRange[1]);
+		double yMax = Math.max(yRange[0], yRange[1]);
+		double[] widthRange = {0, width};
+		double[] heightRange = {0, height};
+		this.annotationCount = 0;
+		for (Polynomial function : functions) {
+			if (stale.getAsBoolean())
+				return false;
+			double[][] found = {RootFinder.findRoots(function, xRange[0], xRange[1]),
+					RootFinder.findExtrema(function, xRange[0], xRange[1])};
+			for (double[] xs : found) {
+				for (double x : xs) {
+					double y = function.valueAt(x);
+					if (!(y >= yMin && y <= yMax))
+						continue;
+					if (this.annotationCount == this.annotationXs.length) {
+						this.annotationXs = Arrays.copyOf(this.annotationXs,
+								this.annotationCount * 2);
+						this.annotationYs = Arrays.copyOf(this.annotationYs,
+								this.annotationCount * 2);
+					}
+					this.annotationXs[this.annotationCount] = (int)(GraphPlotter
+							.scaleToRange(x, xRange, widthRange));
+					this.annotationYs[this.annotationCount] = height - (int)(GraphPlotter
+							.scaleToRange(y, yRange, heightRange));
+					this.annotationCount++;
+				}
+			}
+		}
+		return true;
+	}
+
+}
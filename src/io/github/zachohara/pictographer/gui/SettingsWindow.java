@@ -16,18 +16,42 @@
 
 package io.github.zachohara.pictographer.gui;
 
+import io.github.zachohara.pictographer.ImageExporter;
 import io.github.zachohara.pictographer.OptionState;
+import io.github.zachohara.pictographer.core.FunctionParser;
+import io.github.zachohara.pictographer.core.Polynomial;
+import io.github.zachohara.pictographer.core.PolynomialFitter;
 
 import java.awt.BorderLayout;
 import java.awt.FlowLayout;
 import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JSpinner;
 import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 /**
  * An {@code SettingsWindow} is a {@code JFrame} that handles input from the user for the
@@ -73,11 +97,41 @@ public class SettingsWindow extends JFrame implements KeyListener {
 	 */
 	private JTextField functionField;
 
+	/**
+	 * The check box for evaluating the function with compensated arithmetic.
+	 */
+	private JCheckBox compensatedBox;
+
+	/**
+	 * The button that exports the graph and its background to an image file.
+	 */
+	private JButton exportButton;
+
+	/**
+	 * The check box for fitting a polynomial to points clicked on the graph.
+	 */
+	private JCheckBox fitBox;
+
+	/**
+	 * The spinner for the degree of the polynomial to fit.
+	 */
+	private JSpinner degreeSpinner;
+
+	/**
+	 * The timer that updates the settings once the user has stopped typing for a moment.
+	 */
+	private Timer typingTimer;
+
+	/**
+	 * The listener that restarts the typing timer whenever the text of a field changes.
+	 */
+	private DocumentListener typingListener;
+
 
 	/**
 	 * The default size of the settings window, in a {width, height} format.
 	 */
-	private static final int[] WINDOW_SIZE = {400, 120};
+	private static final int[] WINDOW_SIZE = {640, 155};
 
 	/**
 	 * The default title of the settings window.
@@ -85,6 +139,11 @@ public class SettingsWindow extends JFrame implements KeyListener {
 	private static final String WINDOW_TITLE = "Pictographer Settings";
 
 
+	/**
+	 * The degree of the polynomial to fit, before the user chooses another one.
+	 */
+	private static final int DEFAULT_FIT_DEGREE = 3;
+
 	/**
 	 * The default width of the field used for entering the function.
 	 */
@@ -95,6 +154,12 @@ public class SettingsWindow extends JFrame implements KeyListener {
 	 */
 	private static final int WINDOW_FIELD_WIDTH = 5;
 
+	/**
+	 * The number of milliseconds after the last change to a field before the graph is
+	 * redrawn.
+	 */
+	private static final int TYPING_DELAY = 150;
+
 	private static final long serialVersionUID = 1L;
 
 	/**
@@ -113,8 +178,10 @@ public class SettingsWindow extends JFrame implements KeyListener {
 		super();
 		this.options = options;
 		this.mainWindow = win;
+		this.initializeTypingTimer();
 		this.initializeWindow();
 		this.initializeFunctionField();
+		this.initializeFitControls();
 		this.initializeWindowPanel();
 		this.initializeWindowSettings();
 	}
@@ -134,18 +201,124 @@ public class SettingsWindow extends JFrame implements KeyListener {
 	}
 
 	/**
-	 * Initializes the text field used for entering a function.
+	 * Initializes the timer that redraws the graph while the user is typing, and the
+	 * listener that restarts it.
+	 */
+	private void initializeTypingTimer() {
+		this.typingTimer = new Timer(TYPING_DELAY, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				SettingsWindow.this.updateSettings(false);
+			}
+		});
+		this.typingTimer.setRepeats(false);
+		this.typingListener = new DocumentListener() {
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				SettingsWindow.this.typingTimer.restart();
+			}
+
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				SettingsWindow.this.typingTimer.restart();
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+				SettingsWindow.this.typingTimer.restart();
+			}
+		};
+	}
+
+	/**
+	 * Initializes the text field used for entering a function, the check box for
+	 * evaluating it with compensated arithmetic, and the button for exporting the graph.
 	 */
 	private void initializeFunctionField() {
 		JPanel bottomPanel = new JPanel();
 		bottomPanel.setLayout(new FlowLayout());
 		bottomPanel.add(new JLabel("f(x) = "));
 		this.functionField = new JTextField(FUNCTION_FIELD_WIDTH);
+		this.functionField.setToolTipText("Separate several functions with "
+				+ FunctionParser.FUNCTION_SEPARATOR);
 		this.functionField.addKeyListener(this);
+		this.functionField.getDocument().addDocumentListener(this.typingListener);
 		bottomPanel.add(this.functionField);
+		this.compensatedBox = new JCheckBox("Extra precision", this.options.isCompensated());
+		this.compensatedBox.setToolTipText("Keeps high-degree graphs smooth far from the "
+				+ "origin, but draws them more slowly");
+		this.compensatedBox.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				SettingsWindow.this.options.setCompensated(
+						SettingsWindow.this.compensatedBox.isSelected());
+				SettingsWindow.this.mainWindow.update();
+			}
+		});
+		bottomPanel.add(this.compensatedBox);
+		this.exportButton = new JButton("Export...");
+		this.exportButton.setToolTipText("Saves the graph over the full-resolution image");
+		this.exportButton.setEnabled(this.options.getImageFile() != null);
+		this.exportButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				SettingsWindow.this.exportImage();
+			}
+		});
+		bottomPanel.add(this.exportButton);
 		this.add("South", bottomPanel);
 	}
 
+	/**
+	 * Initializes the controls for fitting a polynomial to points clicked on the graph,
+	 * and the listener that puts each fitted polynomial in the function field.
+	 */
+	private void initializeFitControls() {
+		JPanel topPanel = new JPanel();
+		topPanel.setLayout(new FlowLayout());
+		this.fitBox = new JCheckBox("Fit to clicks");
+		this.fitBox.setToolTipText("Click on the graph to add points and right-click to "
+				+ "remove the last one; the function is replaced by the best fit");
+		this.fitBox.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				SettingsWindow.this.updateSettings(false);
+				SettingsWindow.this.mainWindow.setFitting(
+						SettingsWindow.this.fitBox.isSelected(),
+						(Integer)(SettingsWindow.this.degreeSpinner.getValue()));
+			}
+		});
+		topPanel.add(this.fitBox);
+		topPanel.add(new JLabel("Degree "));
+		this.degreeSpinner = new JSpinner(new SpinnerNumberModel(DEFAULT_FIT_DEGREE, 0,
+				PolynomialFitter.MAX_DEGREE, 1));
+		this.degreeSpinner.addChangeListener(new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent e) {
+				SettingsWindow.this.mainWindow.setFitDegree(
+						(Integer)(SettingsWindow.this.degreeSpinner.getValue()));
+			}
+		});
+		topPanel.add(this.degreeSpinner);
+		JButton clearButton = new JButton("Clear points");
+		clearButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				SettingsWindow.this.mainWindow.clearFitPoints();
+			}
+		});
+		topPanel.add(clearButton);
+		this.add("North", topPanel);
+		this.mainWindow.addPropertyChangeListener(GraphWindow.FIT_PROPERTY,
+				new PropertyChangeListener() {
+					@Override
+					public void propertyChange(PropertyChangeEvent e) {
+						SettingsWindow.this.functionField.setText((String)(e.getNewValue()));
+						SettingsWindow.this.updateSettings(false);
+					}
+				});
+	}
+
 	/**
 	 * Initializes the {@code JPanel} that contains all text input fields.
 	 */
@@ -194,6 +367,7 @@ public class SettingsWindow extends JFrame implements KeyListener {
 		JLabel label = new JLabel(labelText);
 		JTextField field = new JTextField(WINDOW_FIELD_WIDTH);
 		field.addKeyListener(this);
+		field.getDocument().addDocumentListener(this.typingListener);
 		panel.add(label);
 		panel.add(field);
 		this.windowSettings.add(panel);
@@ -206,6 +380,19 @@ public class SettingsWindow extends JFrame implements KeyListener {
 	 * this method only updates from the function field.
 	 */
 	public void updateSettings() {
+		this.updateSettings(true);
+	}
+
+	/**
+	 * Updates all of the settings and stores them in the {@code OptionState} object
+	 * attached to this window. If any of the numbers in the fields are not valid,
+	 * this method only updates from the function field.
+	 * 
+	 * @param warn whether the user should be warned if the function is not valid. The
+	 * warning is left out while the user is still typing.
+	 */
+	private void updateSettings(boolean warn) {
+		this.typingTimer.stop();
 		if (this.allAreValid()) {
 			this.options.setxMin(Double.parseDouble(this.xMinField.getText()));
 			this.options.setxMax(Double.parseDouble(this.xMaxField.getText()));
@@ -218,6 +405,8 @@ public class SettingsWindow extends JFrame implements KeyListener {
 			this.options.setFunctionString(this.functionField.getText());
 			this.mainWindow.update();
 		}
+		if (warn && this.options.getFunctionError() != null)
+			FunctionParser.warnParseError(this.options.getFunctionError());
 	}
 
 	/**
@@ -238,7 +427,58 @@ public class SettingsWindow extends JFrame implements KeyListener {
 	}
 
 	/**
-	 * Updates the settings when the 'enter' key is pressed.
+	 * Asks the user for a file, and exports the graph over the full-resolution
+	 * background image to it. The image is exported on a background thread, and the
+	 * export button is disabled until it has finished.
+	 */
+	private void exportImage() {
+		this.updateSettings(false);
+		JFileChooser chooser = new JFileChooser();
+		chooser.setFileFilter(new FileNameExtensionFilter("PNG or JPEG images", "png",
+				"jpg", "jpeg"));
+		if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+			return;
+		File selected = chooser.getSelectedFile();
+		if (selected.getName().indexOf('.') < 0) {
+			selected = new File(selected.getParentFile(), selected.getName() + "."
+					+ ImageExporter.DEFAULT_FORMAT);
+		}
+		if (selected.exists() && JOptionPane.showConfirmDialog(this, selected.getName()
+				+ " already exists. Replace it?", "Export", JOptionPane.YES_NO_OPTION)
+				!= JOptionPane.YES_OPTION)
+			return;
+		final File output = selected;
+		final File source = this.options.getImageFile();
+		final List<Polynomial> functions = this.options.getFunctions();
+		final double[] xRange = this.options.getxRange();
+		final double[] yRange = this.options.getyRange();
+		final boolean compensated = this.options.isCompensated();
+		this.exportButton.setEnabled(false);
+		new SwingWorker<Void, Void>() {
+			@Override
+			protected Void doInBackground() throws Exception {
+				ImageExporter.export(source, output, functions, xRange, yRange, compensated);
+				return null;
+			}
+
+			@Override
+			protected void done() {
+				SettingsWindow.this.exportButton.setEnabled(true);
+				try {
+					this.get();
+				} catch (ExecutionException | InterruptedException e) {
+					Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+					JOptionPane.showMessageDialog(SettingsWindow.this, "Could not export "
+							+ output.getName() + ": " + cause.getMessage(), "Error",
+							JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		}.execute();
+	}
+
+	/**
+	 * Updates the settings when the 'enter' key is pressed, without waiting for the
+	 * typing timer.
 	 */
 	@Override
 	public void keyPressed(KeyEvent e) {